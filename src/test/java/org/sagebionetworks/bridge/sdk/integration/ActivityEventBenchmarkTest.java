@@ -0,0 +1,172 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.joda.time.DateTimeZone.UTC;
+import static org.junit.Assert.assertEquals;
+import static org.sagebionetworks.bridge.sdk.integration.InitListener.CLINIC_VISIT;
+import static org.sagebionetworks.bridge.sdk.integration.InitListener.EVENT_KEY1;
+import static org.sagebionetworks.bridge.sdk.integration.InitListener.EVENT_KEY2;
+import static org.sagebionetworks.bridge.sdk.integration.InitListener.EVENT_KEY3;
+import static org.sagebionetworks.bridge.sdk.integration.Tests.STUDY_ID_1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.rest.api.ForConsentedUsersApi;
+import org.sagebionetworks.bridge.rest.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.rest.model.CustomActivityEventRequest;
+import org.sagebionetworks.bridge.rest.model.StudyActivityEventPagedList;
+import org.sagebionetworks.bridge.rest.model.StudyActivityEventRequest;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+/**
+ * Pushes custom events at a much higher rate per participant than the functional tests, for each of the
+ * update types configured on study 1 by InitListener (event1 and clinic_visit are MUTABLE, event2 is
+ * IMMUTABLE, event3 is FUTURE_ONLY). Reports the write latency of each update type, and how the latency of
+ * retrieving an event's history grows with the history. Scale with -Dperf.events.users,
+ * -Dperf.events.writes, -Dperf.events.checkpoint and -Dperf.events.threads.
+ */
+@Category(PerformanceTest.class)
+public class ActivityEventBenchmarkTest {
+    private static final Logger LOG = LoggerFactory.getLogger(ActivityEventBenchmarkTest.class);
+
+    private static final int HISTORY_PAGE_SIZE = 50;
+
+    private final int userCount = PerfStats.param("events.users", 5);
+    private final int writes = PerfStats.param("events.writes", 100);
+    private final int checkpoint = PerfStats.param("events.checkpoint", 25);
+    private final int threads = PerfStats.param("events.threads", 5);
+
+    private List<TestUser> users = new ArrayList<>();
+
+    private final PerfStats mutableStats = new PerfStats("createStudyActivityEvent MUTABLE (event1)");
+    private final PerfStats clinicVisitStats = new PerfStats("createStudyActivityEvent MUTABLE (clinic_visit)");
+    private final PerfStats immutableStats = new PerfStats(
+            "createStudyActivityEvent IMMUTABLE (event2, first write)");
+    private final PerfStats immutableRejectedStats = new PerfStats(
+            "createStudyActivityEvent IMMUTABLE (event2, rejected)");
+    private final PerfStats futureOnlyStats = new PerfStats("createStudyActivityEvent FUTURE_ONLY (event3)");
+    private final PerfStats globalStats = new PerfStats("createCustomActivityEvent MUTABLE (event1)");
+    private final PerfStats studyEventsStats = new PerfStats("getStudyActivityEvents");
+    private final PerfStats globalEventsStats = new PerfStats("getActivityEvents");
+    private final Map<Integer, PerfStats> historyStats = new TreeMap<>();
+
+    @Before
+    public void before() throws Exception {
+        List<Callable<TestUser>> tasks = new ArrayList<>();
+        for (int i=0; i < userCount; i++) {
+            tasks.add(() -> TestUserHelper.createAndSignInUser(ActivityEventBenchmarkTest.class, true));
+        }
+        users = PerfStats.runConcurrently(threads, tasks);
+    }
+
+    @After
+    public void after() throws Exception {
+        for (TestUser user : users) {
+            user.signOutAndDeleteUser();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void highFrequencyCustomEvents() throws Exception {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (TestUser user : users) {
+            tasks.add(() -> pushEvents(user));
+        }
+        for (Integer historySize : PerfStats.runConcurrently(threads, tasks)) {
+            assertEquals(Integer.valueOf(writes), historySize);
+        }
+        for (TestUser user : users) {
+            ForConsentedUsersApi usersApi = user.getClient(ForConsentedUsersApi.class);
+            studyEventsStats.time(() -> usersApi.getStudyActivityEvents(STUDY_ID_1).execute());
+            globalEventsStats.time(() -> usersApi.getActivityEvents().execute());
+        }
+
+        LOG.info("{} participants x {} writes per event", userCount, writes);
+        mutableStats.log(LOG);
+        clinicVisitStats.log(LOG);
+        immutableStats.log(LOG);
+        immutableRejectedStats.log(LOG);
+        futureOnlyStats.log(LOG);
+        globalStats.log(LOG);
+        studyEventsStats.log(LOG);
+        globalEventsStats.log(LOG);
+        synchronized(historyStats) {
+            for (PerfStats stats : historyStats.values()) {
+                stats.log(LOG);
+            }
+        }
+    }
+
+    /** Returns the size of the event1 history once all writes are done. */
+    @SuppressWarnings("deprecation")
+    private Integer pushEvents(TestUser user) throws Exception {
+        ForConsentedUsersApi usersApi = user.getClient(ForConsentedUsersApi.class);
+        DateTime start = DateTime.now(UTC);
+
+        for (int i=0; i < writes; i++) {
+            // Every write moves the timestamp forward, so FUTURE_ONLY events are also updated each time
+            DateTime timestamp = start.plusMinutes(i);
+
+            mutableStats.time(() -> usersApi.createStudyActivityEvent(STUDY_ID_1,
+                    request(EVENT_KEY1, timestamp), true, null).execute());
+            clinicVisitStats.time(() -> usersApi.createStudyActivityEvent(STUDY_ID_1,
+                    request(CLINIC_VISIT, timestamp), true, null).execute());
+            futureOnlyStats.time(() -> usersApi.createStudyActivityEvent(STUDY_ID_1,
+                    request(EVENT_KEY3, timestamp), true, null).execute());
+            globalStats.time(() -> usersApi.createCustomActivityEvent(
+                    new CustomActivityEventRequest().eventId(EVENT_KEY1).timestamp(timestamp)).execute());
+
+            long immutableStart = System.nanoTime();
+            try {
+                usersApi.createStudyActivityEvent(STUDY_ID_1, request(EVENT_KEY2, timestamp), true, null).execute();
+                immutableStats.record(System.nanoTime() - immutableStart);
+            } catch(BadRequestException e) {
+                // Expected after the first write; the cost of rejecting the update is measured separately
+                immutableRejectedStats.record(System.nanoTime() - immutableStart);
+            }
+            if ((i+1) % checkpoint == 0) {
+                getHistory(usersApi, i+1);
+            }
+        }
+        return getHistory(usersApi, writes);
+    }
+
+    private int getHistory(ForConsentedUsersApi usersApi, int historySize) throws Exception {
+        PerfStats stats;
+        synchronized(historyStats) {
+            stats = historyStats.computeIfAbsent(historySize,
+                    size -> new PerfStats("getStudyActivityEventHistory (all pages, " + size + " records)"));
+        }
+        return stats.time(() -> {
+            int offsetBy = 0;
+            int total;
+            do {
+                StudyActivityEventPagedList page = usersApi.getStudyActivityEventHistory(
+                        STUDY_ID_1, EVENT_KEY1, offsetBy, HISTORY_PAGE_SIZE).execute().body();
+                offsetBy += page.getItems().size();
+                total = page.getTotal();
+                if (page.getItems().isEmpty()) {
+                    break;
+                }
+            } while (offsetBy < total);
+            return offsetBy;
+        });
+    }
+
+    private StudyActivityEventRequest request(String eventId, DateTime timestamp) {
+        return new StudyActivityEventRequest().eventId(eventId).timestamp(timestamp);
+    }
+}
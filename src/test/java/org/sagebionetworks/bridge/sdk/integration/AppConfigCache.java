@@ -0,0 +1,184 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import org.sagebionetworks.bridge.rest.RestUtils;
+import org.sagebionetworks.bridge.rest.api.ForConsentedUsersApi;
+import org.sagebionetworks.bridge.rest.model.AppConfig;
+import org.sagebionetworks.bridge.rest.model.ConfigReference;
+import org.sagebionetworks.bridge.user.TestUser;
+
+/**
+ * A client-side cache of the resolved app config, as an app would hold it between launches. The server
+ * resolves a different config depending on the caller's client info, so configs are cached per app and
+ * User-Agent (client info profile). Entries are served without a server call until their TTL expires; after
+ * that the config is retrieved again and, if its version, modifiedOn timestamp and element revisions are
+ * unchanged, the cached instance is kept so the app does not need to re-apply it. The cache is bounded and
+ * evicts the least recently used profile.
+ */
+public class AppConfigCache {
+
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final LongSupplier clock;
+    private final Map<String, Entry> entries;
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicInteger revalidations = new AtomicInteger();
+    private final AtomicInteger changes = new AtomicInteger();
+    private final AtomicInteger evictions = new AtomicInteger();
+    private final AtomicInteger serverCalls = new AtomicInteger();
+
+    public AppConfigCache(long ttlMillis, int maxEntries) {
+        this(ttlMillis, maxEntries, System::currentTimeMillis);
+    }
+
+    /** The clock can be replaced so that a simulation can advance time without sleeping. */
+    public AppConfigCache(long ttlMillis, int maxEntries, LongSupplier clock) {
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > AppConfigCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public AppConfig getConfigForApp(TestUser user) throws IOException {
+        String key = getKey(user);
+        long now = clock.getAsLong();
+
+        Entry entry;
+        synchronized(entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null && now < entry.expiresOn) {
+            hits.incrementAndGet();
+            return entry.config;
+        }
+        AppConfig config = fetch(user);
+        if (entry == null) {
+            misses.incrementAndGet();
+        } else if (isSameRevision(entry.config, config)) {
+            revalidations.incrementAndGet();
+            config = entry.config;
+        } else {
+            changes.incrementAndGet();
+        }
+        synchronized(entries) {
+            entries.put(key, new Entry(config, now + ttlMillis));
+        }
+        return config;
+    }
+
+    public void invalidate(TestUser user) {
+        synchronized(entries) {
+            entries.remove(getKey(user));
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized(entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized(entries) {
+            return entries.size();
+        }
+    }
+
+    /** Launches served from the cache without a server call. */
+    public int getHits() {
+        return hits.get();
+    }
+
+    /** Launches for a profile that was not in the cache (first launch or after eviction). */
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /** Expired entries that were retrieved again and found to be unchanged. */
+    public int getRevalidations() {
+        return revalidations.get();
+    }
+
+    /** Expired entries that were retrieved again and found to have changed on the server. */
+    public int getChanges() {
+        return changes.get();
+    }
+
+    public int getEvictions() {
+        return evictions.get();
+    }
+
+    public int getServerCalls() {
+        return serverCalls.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AppConfigCache [hits=%d, misses=%d, revalidations=%d, changes=%d, evictions=%d, serverCalls=%d]",
+                getHits(), getMisses(), getRevalidations(), getChanges(), getEvictions(), getServerCalls());
+    }
+
+    private AppConfig fetch(TestUser user) throws IOException {
+        serverCalls.incrementAndGet();
+        return user.getClient(ForConsentedUsersApi.class).getConfigForApp(user.getAppId()).execute().body();
+    }
+
+    static String getKey(TestUser user) {
+        return user.getAppId() + ":" + RestUtils.getUserAgent(user.getClientManager().getClientInfo());
+    }
+
+    /**
+     * Configs are the same revision if they are the same config at the same version, and none of the
+     * elements they reference has moved to a different revision.
+     */
+    static boolean isSameRevision(AppConfig cached, AppConfig retrieved) {
+        return Objects.equals(cached.getGuid(), retrieved.getGuid())
+                && Objects.equals(cached.getVersion(), retrieved.getVersion())
+                && Objects.equals(cached.getModifiedOn(), retrieved.getModifiedOn())
+                && sameElementRevisions(cached.getConfigReferences(), retrieved.getConfigReferences());
+    }
+
+    private static boolean sameElementRevisions(List<ConfigReference> refs1, List<ConfigReference> refs2) {
+        int size1 = (refs1 == null) ? 0 : refs1.size();
+        int size2 = (refs2 == null) ? 0 : refs2.size();
+        if (size1 != size2) {
+            return false;
+        }
+        for (int i=0; i < size1; i++) {
+            if (!Objects.equals(refs1.get(i).getId(), refs2.get(i).getId())
+                    || !Objects.equals(refs1.get(i).getRevision(), refs2.get(i).getRevision())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Entry {
+        private final AppConfig config;
+        private final long expiresOn;
+
+        private Entry(AppConfig config, long expiresOn) {
+            this.config = config;
+            this.expiresOn = expiresOn;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.sagebionetworks.bridge.sdk.integration.Tests.ORG_ID_1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.rest.api.AppConfigsApi;
+import org.sagebionetworks.bridge.rest.api.ForAdminsApi;
+import org.sagebionetworks.bridge.rest.api.OrganizationsApi;
+import org.sagebionetworks.bridge.rest.model.AppConfig;
+import org.sagebionetworks.bridge.rest.model.ClientInfo;
+import org.sagebionetworks.bridge.rest.model.Criteria;
+import org.sagebionetworks.bridge.rest.model.GuidVersionHolder;
+import org.sagebionetworks.bridge.rest.model.Role;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+import com.google.common.collect.Maps;
+
+public class AppConfigCacheTest {
+    private static final Logger LOG = LoggerFactory.getLogger(AppConfigCacheTest.class);
+
+    private static final Integer ONE = 1;
+    // Versions well clear of the other app config tests, so only our config matches these clients.
+    private static final int MIN_APP_VERSION = 3000;
+    private static final int MAX_APP_VERSION = 3999;
+    private static final long TTL_MILLIS = 60 * 60 * 1000;
+
+    private TestUser admin;
+    private TestUser developer;
+    private TestUser user;
+    private AppConfigsApi appConfigsApi;
+    private AppConfig appConfig;
+
+    @Before
+    public void before() throws Exception {
+        admin = TestUserHelper.getSignedInAdmin();
+        developer = TestUserHelper.createAndSignInUser(AppConfigCacheTest.class, false, Role.DEVELOPER);
+        admin.getClient(OrganizationsApi.class).addMember(ORG_ID_1, developer.getUserId()).execute();
+        appConfigsApi = developer.getClient(AppConfigsApi.class);
+
+        // As in AppConfigTest, restrict configs with no Android range to Android 1-1 so they can't match.
+        for (AppConfig existing : appConfigsApi.getAppConfigs(false).execute().body().getItems()) {
+            Map<String,Integer> minMap = existing.getCriteria().getMinAppVersions();
+            Map<String,Integer> maxMap = existing.getCriteria().getMaxAppVersions();
+            if (!(ONE.equals(minMap.get("Android"))) || !(ONE.equals(maxMap.get("Android")))) {
+                minMap.put("Android", 1);
+                maxMap.put("Android", 1);
+                appConfigsApi.updateAppConfig(existing.getGuid(), existing).execute();
+            }
+        }
+        Map<String,Integer> minMap = Maps.newHashMap();
+        minMap.put("Android", MIN_APP_VERSION);
+        Map<String,Integer> maxMap = Maps.newHashMap();
+        maxMap.put("Android", MAX_APP_VERSION);
+
+        appConfig = new AppConfig().label(Tests.randomIdentifier(getClass()))
+                .criteria(new Criteria().minAppVersions(minMap).maxAppVersions(maxMap));
+        GuidVersionHolder holder = appConfigsApi.createAppConfig(appConfig).execute().body();
+        appConfig.setGuid(holder.getGuid());
+        appConfig.setVersion(holder.getVersion());
+
+        user = new TestUserHelper.Builder(AppConfigCacheTest.class).withConsentUser(true)
+                .withClientInfo(clientInfo(MIN_APP_VERSION)).createAndSignInUser();
+    }
+
+    @After
+    public void after() throws Exception {
+        if (appConfig != null && appConfig.getGuid() != null) {
+            admin.getClient(ForAdminsApi.class).deleteAppConfig(appConfig.getGuid(), true).execute();
+        }
+        if (user != null) {
+            user.signOutAndDeleteUser();
+        }
+        if (developer != null) {
+            developer.signOutAndDeleteUser();
+        }
+    }
+
+    @Test
+    public void cacheRevalidatesAndDetectsChanges() throws Exception {
+        AtomicLong clock = new AtomicLong(0L);
+        AppConfigCache cache = new AppConfigCache(TTL_MILLIS, 10, clock::get);
+
+        AppConfig first = cache.getConfigForApp(user);
+        assertEquals(appConfig.getGuid(), first.getGuid());
+        assertEquals(1, cache.getMisses());
+
+        // Within the TTL, there is no server call
+        assertSame(first, cache.getConfigForApp(user));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getServerCalls());
+
+        // After the TTL, the config is retrieved but is unchanged, so the cached instance is kept
+        clock.addAndGet(TTL_MILLIS);
+        assertSame(first, cache.getConfigForApp(user));
+        assertEquals(1, cache.getRevalidations());
+        assertEquals(2, cache.getServerCalls());
+
+        // Change the config on the server; the next revalidation picks up the new version
+        appConfig.setLabel(appConfig.getLabel() + "-updated");
+        GuidVersionHolder holder = appConfigsApi.updateAppConfig(appConfig.getGuid(), appConfig).execute().body();
+        appConfig.setVersion(holder.getVersion());
+
+        assertSame(first, cache.getConfigForApp(user));
+        clock.addAndGet(TTL_MILLIS);
+        AppConfig second = cache.getConfigForApp(user);
+        assertEquals(1, cache.getChanges());
+        assertEquals(holder.getVersion(), second.getVersion());
+        assertNotEquals(first.getVersion(), second.getVersion());
+
+        cache.invalidate(user);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void cacheEvictsLeastRecentlyUsedProfile() throws Exception {
+        AppConfigCache cache = new AppConfigCache(TTL_MILLIS, 2);
+
+        TestUser profile1 = profile(MIN_APP_VERSION);
+        TestUser profile2 = profile(MIN_APP_VERSION+1);
+        TestUser profile3 = profile(MIN_APP_VERSION+2);
+
+        cache.getConfigForApp(profile1);
+        cache.getConfigForApp(profile2);
+        cache.getConfigForApp(profile1);
+        cache.getConfigForApp(profile3); // evicts profile2
+        cache.getConfigForApp(profile1);
+        cache.getConfigForApp(profile2);
+
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getEvictions());
+        assertEquals(4, cache.getMisses());
+        assertEquals(2, cache.getHits());
+    }
+
+    /**
+     * Simulates a fleet of app launches spread across client info profiles over several days, and reports
+     * how many getConfigForApp calls the cache saves. Scale with -Dperf.appconfig.profiles,
+     * -Dperf.appconfig.launches and -Dperf.appconfig.cacheSize.
+     */
+    @Test
+    @Category(PerformanceTest.class)
+    public void fleetOfAppLaunches() throws Exception {
+        int profileCount = PerfStats.param("appconfig.profiles", 20);
+        int launches = PerfStats.param("appconfig.launches", 1000);
+        int cacheSize = PerfStats.param("appconfig.cacheSize", 10);
+
+        List<TestUser> profiles = new ArrayList<>();
+        for (int i=0; i < profileCount; i++) {
+            profiles.add(profile(MIN_APP_VERSION + (i % (MAX_APP_VERSION-MIN_APP_VERSION))));
+        }
+        AtomicLong clock = new AtomicLong(0L);
+        AppConfigCache cache = new AppConfigCache(TTL_MILLIS, cacheSize, clock::get);
+        PerfStats cachedStats = new PerfStats("getConfigForApp (cached)");
+
+        // Launches arrive at random across the profiles, on average every 90 seconds of simulated time
+        Random random = new Random(profileCount);
+        for (int i=0; i < launches; i++) {
+            clock.addAndGet(random.nextInt(180_000));
+            TestUser profile = profiles.get(random.nextInt(profiles.size()));
+            cachedStats.time(() -> cache.getConfigForApp(profile));
+        }
+        int saved = launches - cache.getServerCalls();
+        LOG.info("{} launches over {} profiles: {}, saved {} calls ({}%)", launches, profileCount, cache, saved,
+                (saved * 100) / launches);
+        cachedStats.log(LOG);
+
+        assertEquals(launches, cache.getHits() + cache.getMisses() + cache.getRevalidations() + cache.getChanges());
+        assertEquals(0, cache.getChanges());
+        assertTrue(cache.getServerCalls() <= launches);
+    }
+
+    // The same account, signed in from a different app version (a different client info profile).
+    private TestUser profile(int appVersion) {
+        TestUser profile = Tests.withClientInfo(user, clientInfo(appVersion));
+        profile.signInAgain();
+        return profile;
+    }
+
+    private ClientInfo clientInfo(int appVersion) {
+        return Tests.getClientInfoWithVersion("Android", appVersion);
+    }
+}
@@ -0,0 +1,165 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.sagebionetworks.bridge.rest.model.Role.DEVELOPER;
+import static org.sagebionetworks.bridge.rest.model.SharingScope.NO_SHARING;
+import static org.sagebionetworks.bridge.sdk.integration.Tests.STUDY_ID_2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+
+import org.sagebionetworks.bridge.rest.api.ForConsentedUsersApi;
+import org.sagebionetworks.bridge.rest.api.SubpopulationsApi;
+import org.sagebionetworks.bridge.rest.model.ConsentSignature;
+import org.sagebionetworks.bridge.rest.model.Criteria;
+import org.sagebionetworks.bridge.rest.model.GuidVersionHolder;
+import org.sagebionetworks.bridge.rest.model.Subpopulation;
+import org.sagebionetworks.bridge.rest.model.UserSessionInfo;
+import org.sagebionetworks.bridge.rest.model.Withdrawal;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+/**
+ * Simulates the burst of consents from an enrollment drive. Creates several optional subpopulations that
+ * apply to test users (by data group criteria). Half of them enroll the participant in study 2 on consent.
+ * Participants then sign, withdraw and re-sign every consent concurrently. Reports consent latency with and
+ * without enrollment, withdrawal latency, and the cost of recomputing consent status in the session on sign
+ * in. Scale with -Dperf.consent.users, -Dperf.consent.subpops and -Dperf.consent.threads.
+ */
+@Category(PerformanceTest.class)
+public class ConsentThroughputTest {
+    private static final Logger LOG = LoggerFactory.getLogger(ConsentThroughputTest.class);
+
+    private static final String TEST_USER_GROUP = "test_user";
+    private static final Withdrawal WITHDRAWAL = new Withdrawal().reason("ConsentThroughputTest");
+
+    private final int userCount = PerfStats.param("consent.users", 20);
+    private final int subpopCount = PerfStats.param("consent.subpops", 6);
+    private final int threads = PerfStats.param("consent.threads", 10);
+
+    private TestUser developer;
+    private List<TestUser> users = new ArrayList<>();
+    private List<Subpopulation> subpops = new ArrayList<>();
+
+    private final PerfStats signStats = new PerfStats("createConsentSignature");
+    private final PerfStats signEnrollStats = new PerfStats("createConsentSignature (enrolls in study)");
+    private final PerfStats withdrawStats = new PerfStats("withdrawConsentFromSubpopulation");
+    private final PerfStats resignStats = new PerfStats("createConsentSignature (re-sign)");
+    private final PerfStats signInBeforeStats = new PerfStats("signIn (before optional consents)");
+    private final PerfStats signInAfterStats = new PerfStats("signIn (after optional consents)");
+
+    @Before
+    public void before() throws Exception {
+        developer = TestUserHelper.createAndSignInUser(ConsentThroughputTest.class, false, DEVELOPER);
+        SubpopulationsApi subpopsApi = developer.getClient(SubpopulationsApi.class);
+
+        for (int i=0; i < subpopCount; i++) {
+            Subpopulation subpop = new Subpopulation();
+            subpop.setName("ConsentThroughputTest subpop " + i);
+            subpop.setRequired(false);
+            subpop.setAutoSendConsentSuppressed(true);
+            subpop.setCriteria(new Criteria().allOfGroups(ImmutableList.of(TEST_USER_GROUP)));
+            if (i % 2 == 0) {
+                subpop.addStudyIdsAssignedOnConsentItem(STUDY_ID_2);
+            }
+            GuidVersionHolder keys = subpopsApi.createSubpopulation(subpop).execute().body();
+            subpop.setGuid(keys.getGuid());
+            subpop.setVersion(keys.getVersion());
+            subpops.add(subpop);
+        }
+        List<Callable<TestUser>> tasks = new ArrayList<>();
+        for (int i=0; i < userCount; i++) {
+            tasks.add(() -> new TestUserHelper.Builder(ConsentThroughputTest.class).withTestDataGroup()
+                    .withConsentUser(true).createAndSignInUser());
+        }
+        users = PerfStats.runConcurrently(threads, tasks);
+    }
+
+    @After
+    public void after() throws Exception {
+        try {
+            SubpopulationsApi subpopsApi = TestUserHelper.getSignedInAdmin().getClient(SubpopulationsApi.class);
+            for (Subpopulation subpop : subpops) {
+                subpopsApi.deleteSubpopulation(subpop.getGuid(), true).execute();
+            }
+        } finally {
+            for (TestUser user : users) {
+                user.signOutAndDeleteUser();
+            }
+            if (developer != null) {
+                developer.signOutAndDeleteUser();
+            }
+        }
+    }
+
+    @Test
+    public void signWithdrawAndResignConcurrently() throws Exception {
+        PerfStats subpopsStats = new PerfStats("getSubpopulations");
+        subpopsStats.time(() -> developer.getClient(SubpopulationsApi.class).getSubpopulations(false).execute());
+
+        List<Callable<UserSessionInfo>> tasks = new ArrayList<>();
+        for (TestUser user : users) {
+            tasks.add(() -> consentCycle(user));
+        }
+        List<UserSessionInfo> sessions = PerfStats.runConcurrently(threads, tasks);
+
+        for (UserSessionInfo session : sessions) {
+            for (Subpopulation subpop : subpops) {
+                assertTrue(session.getConsentStatuses().get(subpop.getGuid()).isConsented());
+            }
+            assertTrue(session.getStudyIds().contains(STUDY_ID_2));
+        }
+        LOG.info("{} participants x {} optional subpopulations", userCount, subpopCount);
+        subpopsStats.log(LOG);
+        signStats.log(LOG);
+        signEnrollStats.log(LOG);
+        withdrawStats.log(LOG);
+        resignStats.log(LOG);
+        signInBeforeStats.log(LOG);
+        signInAfterStats.log(LOG);
+        assertEquals(0, signStats.getErrors() + signEnrollStats.getErrors() + resignStats.getErrors());
+    }
+
+    private UserSessionInfo consentCycle(TestUser user) throws Exception {
+        ForConsentedUsersApi usersApi = user.getClient(ForConsentedUsersApi.class);
+        ConsentSignature signature = new ConsentSignature().name("Test User").scope(NO_SHARING)
+                .birthdate(LocalDate.parse("1970-04-04"));
+
+        signInBeforeStats.time(() -> {
+            user.signInAgain();
+            return null;
+        });
+        for (Subpopulation subpop : subpops) {
+            List<String> studyIds = subpop.getStudyIdsAssignedOnConsent();
+            PerfStats stats = (studyIds == null || studyIds.isEmpty()) ? signStats : signEnrollStats;
+            stats.time(() -> usersApi.createConsentSignature(subpop.getGuid(), signature).execute());
+        }
+        for (Subpopulation subpop : subpops) {
+            UserSessionInfo session = withdrawStats.time(() -> usersApi
+                    .withdrawConsentFromSubpopulation(subpop.getGuid(), WITHDRAWAL).execute().body());
+            assertFalse(session.getConsentStatuses().get(subpop.getGuid()).isConsented());
+        }
+        for (Subpopulation subpop : subpops) {
+            resignStats.time(() -> usersApi.createConsentSignature(subpop.getGuid(), signature).execute());
+        }
+        // The consent statuses of every subpopulation are recalculated when the session is created
+        signInAfterStats.time(() -> {
+            user.signInAgain();
+            return null;
+        });
+        return user.getSession();
+    }
+}
@@ -0,0 +1,220 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.rest.api.ForAdminsApi;
+import org.sagebionetworks.bridge.rest.api.ForConsentedUsersApi;
+import org.sagebionetworks.bridge.rest.api.ForResearchersApi;
+import org.sagebionetworks.bridge.rest.api.ForStudyDesignersApi;
+import org.sagebionetworks.bridge.rest.api.StudiesApi;
+import org.sagebionetworks.bridge.rest.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.rest.model.Demographic;
+import org.sagebionetworks.bridge.rest.model.DemographicUser;
+import org.sagebionetworks.bridge.rest.model.DemographicUserResponseList;
+import org.sagebionetworks.bridge.rest.model.DemographicValuesEnumValidationRules;
+import org.sagebionetworks.bridge.rest.model.DemographicValuesNumberRangeValidationRules;
+import org.sagebionetworks.bridge.rest.model.DemographicValuesValidationConfig;
+import org.sagebionetworks.bridge.rest.model.DemographicValuesValidationConfig.ValidationTypeEnum;
+import org.sagebionetworks.bridge.rest.model.Enrollment;
+import org.sagebionetworks.bridge.rest.model.Role;
+import org.sagebionetworks.bridge.rest.model.Study;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+/**
+ * Submits large demographic payloads (many multi-select categories with many values each) concurrently at the
+ * app and study levels, first with no validation configured and then with an enum or number range validation
+ * config on every category. Reports write latency with and without validation, the cost of saving the
+ * configs, and the cost of paging through getDemographicUsers at the study level and getDemographicUsersAppLevel
+ * at the app level. Scale with -Dperf.demographics.users, -Dperf.demographics.categories,
+ * -Dperf.demographics.values, -Dperf.demographics.enumSize, -Dperf.demographics.pageSize and
+ * -Dperf.demographics.threads.
+ */
+@Category(PerformanceTest.class)
+public class DemographicsPerformanceTest {
+    private static final Logger LOG = LoggerFactory.getLogger(DemographicsPerformanceTest.class);
+
+    private static final String CATEGORY_PREFIX = "perf-category-";
+
+    private final int userCount = PerfStats.param("demographics.users", 20);
+    private final int categoryCount = PerfStats.param("demographics.categories", 30);
+    private final int valueCount = PerfStats.param("demographics.values", 10);
+    private final int enumSize = PerfStats.param("demographics.enumSize", 50);
+    private final int pageSize = PerfStats.param("demographics.pageSize", 20);
+    private final int threads = PerfStats.param("demographics.threads", 10);
+
+    private TestUser admin;
+    private TestUser researcher;
+    private TestUser studyDesigner;
+    private String studyId;
+    private List<TestUser> users = new ArrayList<>();
+
+    @Before
+    public void before() throws Exception {
+        admin = TestUserHelper.getSignedInAdmin();
+        researcher = TestUserHelper.createAndSignInUser(DemographicsPerformanceTest.class, true, Role.RESEARCHER);
+        studyDesigner = TestUserHelper.createAndSignInUser(DemographicsPerformanceTest.class, true,
+                Role.STUDY_DESIGNER);
+
+        studyId = Tests.randomIdentifier(getClass());
+        StudiesApi studiesApi = admin.getClient(StudiesApi.class);
+        studiesApi.createStudy(new Study().identifier(studyId).name("Study " + studyId)).execute();
+
+        List<Callable<TestUser>> tasks = new ArrayList<>();
+        for (int i=0; i < userCount; i++) {
+            tasks.add(() -> {
+                TestUser user = TestUserHelper.createAndSignInUser(DemographicsPerformanceTest.class, true);
+                studiesApi.enrollParticipant(studyId, new Enrollment().userId(user.getUserId())).execute();
+                user.signInAgain();
+                return user;
+            });
+        }
+        users = PerfStats.runConcurrently(threads, tasks);
+    }
+
+    @After
+    public void after() throws Exception {
+        ForAdminsApi adminsApi = admin.getClient(ForAdminsApi.class);
+        try {
+            for (int i=0; i < categoryCount; i++) {
+                try {
+                    adminsApi.deleteDemographicsValidationConfigAppLevel(category(i)).execute();
+                } catch(EntityNotFoundException e) {
+                }
+                if (studyDesigner != null && studyId != null) {
+                    try {
+                        studyDesigner.getClient(ForStudyDesignersApi.class)
+                                .deleteDemographicsValidationConfig(studyId, category(i)).execute();
+                    } catch(EntityNotFoundException e) {
+                    }
+                }
+            }
+            for (TestUser user : users) {
+                user.signOutAndDeleteUser();
+            }
+            if (researcher != null) {
+                researcher.signOutAndDeleteUser();
+            }
+            if (studyDesigner != null) {
+                studyDesigner.signOutAndDeleteUser();
+            }
+        } finally {
+            if (studyId != null) {
+                adminsApi.deleteStudy(studyId, true).execute();
+            }
+        }
+    }
+
+    @Test
+    public void writeWithAndWithoutValidation() throws Exception {
+        PerfStats studyStats = new PerfStats("saveDemographicUserSelf (no validation)");
+        PerfStats appStats = new PerfStats("saveDemographicUserSelfAppLevel (no validation)");
+        writeConcurrently(studyStats, appStats);
+
+        PerfStats configStats = new PerfStats("saveDemographicsValidationConfig (study and app)");
+        ForAdminsApi adminsApi = admin.getClient(ForAdminsApi.class);
+        ForStudyDesignersApi studyDesignersApi = studyDesigner.getClient(ForStudyDesignersApi.class);
+        for (int i=0; i < categoryCount; i++) {
+            String category = category(i);
+            DemographicValuesValidationConfig config = validationConfig(i);
+            configStats.time(() -> adminsApi.saveDemographicsValidationConfigAppLevel(category, config).execute());
+            configStats.time(() -> studyDesignersApi.saveDemographicsValidationConfig(studyId, category, config)
+                    .execute());
+        }
+
+        PerfStats validatedStudyStats = new PerfStats("saveDemographicUserSelf (" + categoryCount + " configs)");
+        PerfStats validatedAppStats = new PerfStats("saveDemographicUserSelfAppLevel (" + categoryCount + " configs)");
+        writeConcurrently(validatedStudyStats, validatedAppStats);
+
+        PerfStats studyPageStats = new PerfStats("getDemographicUsers (page of " + pageSize + ")");
+        PerfStats appPageStats = new PerfStats("getDemographicUsersAppLevel (page of " + pageSize + ")");
+        ForResearchersApi researchersApi = researcher.getClient(ForResearchersApi.class);
+        int studyUsers = page(offset -> studyPageStats.time(() -> researchersApi
+                .getDemographicUsers(studyId, offset, pageSize).execute().body()));
+        int appUsers = page(offset -> appPageStats.time(() -> adminsApi
+                .getDemographicUsersAppLevel(offset, pageSize).execute().body()));
+
+        LOG.info("{} participants x {} categories x {} values; {} study-level and {} app-level demographic users",
+                userCount, categoryCount, valueCount, studyUsers, appUsers);
+        studyStats.log(LOG);
+        appStats.log(LOG);
+        configStats.log(LOG);
+        validatedStudyStats.log(LOG);
+        validatedAppStats.log(LOG);
+        studyPageStats.log(LOG);
+        appPageStats.log(LOG);
+
+        assertEquals(userCount, studyUsers);
+        assertEquals(0, validatedStudyStats.getErrors() + validatedAppStats.getErrors());
+    }
+
+    private void writeConcurrently(PerfStats studyStats, PerfStats appStats) throws Exception {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (TestUser user : users) {
+            ForConsentedUsersApi usersApi = user.getClient(ForConsentedUsersApi.class);
+            tasks.add(() -> {
+                studyStats.time(() -> usersApi.saveDemographicUserSelf(studyId, payload()).execute());
+                appStats.time(() -> usersApi.saveDemographicUserSelfAppLevel(payload()).execute());
+                return null;
+            });
+        }
+        PerfStats.runConcurrently(threads, tasks);
+    }
+
+    /** Page through the demographic users by offset and return the number of users. */
+    private int page(ThrowingFunction<Integer, DemographicUserResponseList> getPage) throws Exception {
+        int offsetBy = 0;
+        int count;
+        do {
+            count = getPage.apply(offsetBy).getItems().size();
+            offsetBy += count;
+        } while (count == pageSize);
+        return offsetBy;
+    }
+
+    // Even categories are multi-select enums, odd categories are multi-value numbers; all the values are valid
+    private DemographicUser payload() {
+        Map<String, Demographic> demographics = new HashMap<>();
+        for (int i=0; i < categoryCount; i++) {
+            List<Object> values = new ArrayList<>();
+            for (int j=0; j < valueCount; j++) {
+                values.add((i % 2 == 0) ? ("option" + ((i + j) % enumSize)) : (Object)(j * 10.5));
+            }
+            demographics.put(category(i), new Demographic().multipleSelect(true).values(values));
+        }
+        return new DemographicUser().demographics(demographics);
+    }
+
+    private DemographicValuesValidationConfig validationConfig(int index) {
+        if (index % 2 == 0) {
+            List<String> options = new ArrayList<>();
+            for (int j=0; j < enumSize; j++) {
+                options.add("option" + j);
+            }
+            DemographicValuesEnumValidationRules rules = new DemographicValuesEnumValidationRules();
+            rules.put("en", options);
+            return new DemographicValuesValidationConfig().validationType(ValidationTypeEnum.ENUM)
+                    .validationRules(rules);
+        }
+        return new DemographicValuesValidationConfig().validationType(ValidationTypeEnum.NUMBER_RANGE)
+                .validationRules(new DemographicValuesNumberRangeValidationRules().min(0d)
+                        .max(valueCount * 10.5));
+    }
+
+    private static String category(int index) {
+        return CATEGORY_PREFIX + index;
+    }
+}
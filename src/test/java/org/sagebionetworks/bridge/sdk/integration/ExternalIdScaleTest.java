@@ -0,0 +1,173 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.sagebionetworks.bridge.sdk.integration.Tests.STUDY_ID_1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.sagebionetworks.bridge.rest.api.ForAdminsApi;
+import org.sagebionetworks.bridge.rest.api.ForResearchersApi;
+import org.sagebionetworks.bridge.rest.model.ExternalIdentifierList;
+import org.sagebionetworks.bridge.rest.model.Role;
+import org.sagebionetworks.bridge.rest.model.SignUp;
+import org.sagebionetworks.bridge.rest.model.StudyParticipant;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+/**
+ * Bulk-imports external ID participants into study 1 the way a study pre-loads its IDs, in concurrent batches.
+ * After each batch, measures getParticipantByExternalId point lookups, a full paging of the imported IDs with
+ * getExternalIdsForStudy, and narrower idFilter prefix searches, so the latency of each can be read against the
+ * number of IDs in the study. Scale with -Dperf.extid.participants, -Dperf.extid.batch, -Dperf.extid.buckets,
+ * -Dperf.extid.lookups, -Dperf.extid.pageSize and -Dperf.extid.threads.
+ */
+@Category(PerformanceTest.class)
+public class ExternalIdScaleTest {
+    private static final Logger LOG = LoggerFactory.getLogger(ExternalIdScaleTest.class);
+
+    private final int participantCount = PerfStats.param("extid.participants", 500);
+    private final int batchSize = PerfStats.param("extid.batch", 100);
+    private final int bucketCount = PerfStats.param("extid.buckets", 5);
+    private final int lookups = PerfStats.param("extid.lookups", 20);
+    private final int pageSize = PerfStats.param("extid.pageSize", 50);
+    private final int threads = PerfStats.param("extid.threads", 10);
+
+    private String prefix;
+    private TestUser admin;
+    private TestUser researcher;
+    private List<String> userIds = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void before() throws Exception {
+        prefix = RandomStringUtils.randomAlphabetic(5);
+        admin = TestUserHelper.getSignedInAdmin();
+        researcher = TestUserHelper.createAndSignInUser(ExternalIdScaleTest.class, true, Role.RESEARCHER);
+    }
+
+    @After
+    public void after() throws Exception {
+        ForAdminsApi adminsApi = admin.getClient(ForAdminsApi.class);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (String userId : userIds) {
+            tasks.add(() -> {
+                adminsApi.deleteUser(userId).execute();
+                return null;
+            });
+        }
+        try {
+            PerfStats.runConcurrently(threads, tasks);
+        } finally {
+            if (researcher != null) {
+                researcher.signOutAndDeleteUser();
+            }
+        }
+    }
+
+    @Test
+    public void bulkImportAndLookup() throws Exception {
+        ForResearchersApi researchersApi = researcher.getClient(ForResearchersApi.class);
+        PerfStats createStats = new PerfStats("createParticipant (external ID only)");
+        Map<Integer, List<PerfStats>> statsByVolume = new TreeMap<>();
+        List<String> externalIds = new ArrayList<>();
+        Random random = new Random(participantCount);
+
+        while (externalIds.size() < participantCount) {
+            int batchStart = externalIds.size();
+            int batchEnd = Math.min(participantCount, batchStart + batchSize);
+            List<Callable<String>> tasks = new ArrayList<>();
+            for (int i=batchStart; i < batchEnd; i++) {
+                String externalId = externalId(i);
+                externalIds.add(externalId);
+                tasks.add(() -> {
+                    SignUp signUp = new SignUp().externalIds(ImmutableMap.of(STUDY_ID_1, externalId));
+                    String userId = createStats.time(() -> researchersApi.createParticipant(signUp).execute()
+                            .body().getIdentifier());
+                    userIds.add(userId);
+                    return userId;
+                });
+            }
+            long start = System.nanoTime();
+            PerfStats.runConcurrently(threads, tasks);
+            long elapsed = System.nanoTime() - start;
+            LOG.info("Imported {} external IDs in {} ms ({} participants/s), {} in total", tasks.size(),
+                    elapsed / 1_000_000, (elapsed == 0) ? 0 : (tasks.size() * 1_000_000_000L) / elapsed,
+                    externalIds.size());
+
+            int volume = externalIds.size();
+            PerfStats lookupStats = new PerfStats("getParticipantByExternalId (" + volume + " IDs)");
+            PerfStats pageStats = new PerfStats("getExternalIdsForStudy page of " + pageSize + " (" + volume + " IDs)");
+            PerfStats scanStats = new PerfStats("getExternalIdsForStudy all pages (" + volume + " IDs)");
+            PerfStats filterStats = new PerfStats("getExternalIdsForStudy idFilter bucket (" + volume + " IDs)");
+            statsByVolume.put(volume, Arrays.asList(lookupStats, pageStats, scanStats, filterStats));
+
+            List<Callable<Void>> lookupTasks = new ArrayList<>();
+            for (int i=0; i < lookups; i++) {
+                String externalId = externalIds.get(random.nextInt(externalIds.size()));
+                lookupTasks.add(() -> {
+                    StudyParticipant participant = lookupStats.time(() -> researchersApi
+                            .getParticipantByExternalId(externalId, false).execute().body());
+                    assertEquals(externalId, participant.getExternalIds().get(STUDY_ID_1));
+                    return null;
+                });
+            }
+            PerfStats.runConcurrently(threads, lookupTasks);
+
+            int found = scanStats.time(() -> page(researchersApi, prefix, pageStats));
+            assertEquals(volume, found);
+            for (int bucket=0; bucket < bucketCount; bucket++) {
+                String bucketPrefix = bucketPrefix(bucket);
+                filterStats.time(() -> researchersApi.getExternalIdsForStudy(STUDY_ID_1, null, pageSize,
+                        bucketPrefix).execute());
+            }
+        }
+
+        LOG.info("{} external IDs in {} buckets", participantCount, bucketCount);
+        createStats.log(LOG);
+        for (List<PerfStats> statsList : statsByVolume.values()) {
+            for (PerfStats stats : statsList) {
+                stats.log(LOG);
+            }
+        }
+        assertEquals(participantCount, userIds.size());
+    }
+
+    /** Page through all the IDs matching the filter and return the number of IDs. */
+    private int page(ForResearchersApi researchersApi, String idFilter, PerfStats pageStats) throws Exception {
+        int offsetBy = 0;
+        int count;
+        do {
+            int offset = offsetBy;
+            ExternalIdentifierList list = pageStats.time(() -> researchersApi.getExternalIdsForStudy(STUDY_ID_1,
+                    offset, pageSize, idFilter).execute().body());
+            count = list.getItems().size();
+            offsetBy += count;
+        } while (count == pageSize);
+        return offsetBy;
+    }
+
+    // IDs are spread over buckets with a common prefix, so idFilter searches match a fraction of the study
+    private String externalId(int index) {
+        return bucketPrefix(index % bucketCount) + String.format("%06d", index);
+    }
+
+    private String bucketPrefix(int bucket) {
+        return prefix + "-b" + bucket + "-";
+    }
+}
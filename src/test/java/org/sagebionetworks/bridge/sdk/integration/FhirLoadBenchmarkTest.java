@@ -0,0 +1,267 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.apache.http.entity.ContentType.APPLICATION_JSON;
+import static org.hl7.fhir.dstu3.model.Appointment.AppointmentStatus.BOOKED;
+import static org.junit.Assert.assertEquals;
+import static org.sagebionetworks.bridge.sdk.integration.CRCTest.CONTEXT;
+import static org.sagebionetworks.bridge.sdk.integration.CRCTest.TEST_EMAIL;
+import static org.sagebionetworks.bridge.sdk.integration.CRCTest.USER_ID_VALUE_NS;
+import static org.sagebionetworks.bridge.sdk.integration.CRCTest.USER_PROFILE_ATTRIBUTES;
+import static org.sagebionetworks.bridge.sdk.integration.CRCTest.WORKFLOW_TAGS;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.fluent.Request;
+import org.apache.http.util.EntityUtils;
+import org.hl7.fhir.dstu3.model.Appointment;
+import org.hl7.fhir.dstu3.model.Appointment.AppointmentParticipantComponent;
+import org.hl7.fhir.dstu3.model.CodeableConcept;
+import org.hl7.fhir.dstu3.model.Coding;
+import org.hl7.fhir.dstu3.model.Extension;
+import org.hl7.fhir.dstu3.model.Identifier;
+import org.hl7.fhir.dstu3.model.Observation;
+import org.hl7.fhir.dstu3.model.ProcedureRequest;
+import org.hl7.fhir.dstu3.model.Range;
+import org.hl7.fhir.dstu3.model.Reference;
+import org.hl7.fhir.dstu3.model.StringType;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.rest.api.AppsApi;
+import org.sagebionetworks.bridge.rest.api.ForAdminsApi;
+import org.sagebionetworks.bridge.rest.api.ParticipantsApi;
+import org.sagebionetworks.bridge.rest.model.AccountSummaryList;
+import org.sagebionetworks.bridge.rest.model.AccountSummarySearch;
+import org.sagebionetworks.bridge.rest.model.App;
+import org.sagebionetworks.bridge.rest.model.SignUp;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+
+/**
+ * Measures the client-side cost of encoding the CUIMC FHIR resources separately from the server's handling of
+ * them. The encode phase needs no server: it compares building a new FhirContext per resource, sharing the
+ * context but creating a parser per resource, and sharing both, reporting time and bytes allocated per encode.
+ * The load phase then drives appointment, procedure request and observation PUTs and lab order POSTs for many
+ * participants concurrently, with bodies encoded before the clock starts, and reports throughput and latency per
+ * resource type. The first round creates the resources and later rounds update them.
+ *
+ * Scale with -Dperf.fhir.encodes, -Dperf.fhir.contexts (encodes with a new context each, which is slow),
+ * -Dperf.fhir.users, -Dperf.fhir.rounds and -Dperf.fhir.threads.
+ */
+@Category(PerformanceTest.class)
+public class FhirLoadBenchmarkTest {
+    private static final Logger LOG = LoggerFactory.getLogger(FhirLoadBenchmarkTest.class);
+
+    private static final String[] OBSERVATION_CODES = { "484670513", "111110111" };
+
+    private final int encodes = PerfStats.param("fhir.encodes", 5000);
+    private final int contexts = PerfStats.param("fhir.contexts", 5);
+    private final int userCount = PerfStats.param("fhir.users", 10);
+    private final int rounds = PerfStats.param("fhir.rounds", 3);
+    private final int threads = PerfStats.param("fhir.threads", 8);
+
+    private TestUser admin;
+    private TestUser systemAccount;
+    private List<TestUser> users = new ArrayList<>();
+    private List<String> healthCodes = new ArrayList<>();
+    private String host;
+    private String credentials;
+
+    @Before
+    public void before() throws Exception {
+        admin = TestUserHelper.getSignedInAdmin();
+
+        // Same app and system account setup as CRCTest
+        AccountSummaryList list = admin.getClient(ParticipantsApi.class)
+                .searchAccountSummaries(new AccountSummarySearch().emailFilter(TEST_EMAIL)).execute().body();
+        if (!list.getItems().isEmpty()) {
+            admin.getClient(ForAdminsApi.class).deleteUser(list.getItems().get(0).getId()).execute();
+        }
+        AppsApi appsApi = admin.getClient(AppsApi.class);
+        App app = appsApi.getUsersApp().execute().body();
+        if (!app.getDataGroups().containsAll(WORKFLOW_TAGS) ||
+            !app.getUserProfileAttributes().containsAll(USER_PROFILE_ATTRIBUTES) ||
+            !app.isHealthCodeExportEnabled()) {
+            app.setHealthCodeExportEnabled(true);
+            app.getDataGroups().addAll(WORKFLOW_TAGS);
+            app.getUserProfileAttributes().addAll(USER_PROFILE_ATTRIBUTES);
+            appsApi.updateUsersApp(app).execute();
+        }
+        String password = Tests.randomIdentifier(getClass());
+        systemAccount = new TestUserHelper.Builder(FhirLoadBenchmarkTest.class)
+                .withConsentUser(true)
+                .withSetPassword(false)
+                .withSignUp(new SignUp().email(TEST_EMAIL).password(password).addDataGroupsItem("test_user"))
+                .createUser();
+        host = admin.getClientManager().getHostUrl();
+        credentials = new String(Base64.getEncoder().encode((TEST_EMAIL + ":" + password).getBytes()));
+
+        List<Callable<TestUser>> tasks = new ArrayList<>();
+        for (int i=0; i < userCount; i++) {
+            tasks.add(() -> TestUserHelper.createAndSignInUser(FhirLoadBenchmarkTest.class, true));
+        }
+        users = PerfStats.runConcurrently(threads, tasks);
+        for (TestUser user : users) {
+            healthCodes.add(admin.getClient(ParticipantsApi.class).getParticipantById(user.getUserId(), false)
+                    .execute().body().getHealthCode());
+        }
+    }
+
+    @After
+    public void after() throws Exception {
+        for (TestUser user : users) {
+            user.signOutAndDeleteUser();
+        }
+        if (systemAccount != null) {
+            systemAccount.signOutAndDeleteUser();
+        }
+    }
+
+    @Test
+    public void encodeCostThenConcurrentLoad() throws Exception {
+        Observation observation = observation("encode-user-id", 0);
+
+        // Warm up the shared context's model scanning and the JIT before any measurement
+        IParser sharedParser = CONTEXT.newJsonParser();
+        for (int i=0; i < 1000; i++) {
+            sharedParser.encodeResourceToString(observation);
+        }
+        measureEncode("new FhirContext per encode", contexts,
+                () -> FhirContext.forDstu3().newJsonParser().encodeResourceToString(observation));
+        measureEncode("shared FhirContext, new parser per encode", encodes,
+                () -> CONTEXT.newJsonParser().encodeResourceToString(observation));
+        measureEncode("shared FhirContext and parser", encodes,
+                () -> sharedParser.encodeResourceToString(observation));
+
+        // Load. Parsers are not thread-safe, so each body gets its own parser from the shared context.
+        PerfStats encodeStats = new PerfStats("encodeResourceToString (during load)");
+        for (int round=0; round < rounds; round++) {
+            int roundNumber = round;
+            runType("appointments", round, user -> encode(encodeStats, appointment(user.getUserId())));
+            runType("procedurerequests", round, user -> encode(encodeStats, procedureRequest(user.getUserId())));
+            runType("observations", round, user -> encode(encodeStats, observation(user.getUserId(),
+                    roundNumber)));
+            runType("laborders", round, null);
+        }
+        encodeStats.log(LOG);
+    }
+
+    /**
+     * Send one resource of this type for every participant concurrently, logging the throughput and latency. A
+     * null body factory means a lab order, which is a POST with no body to a participant-specific path.
+     */
+    private void runType(String type, int round, ThrowingFunction<TestUser, String> bodyFactory)
+            throws Exception {
+        PerfStats stats = new PerfStats(type + " (round " + (round + 1) + ")");
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i=0; i < users.size(); i++) {
+            TestUser user = users.get(i);
+            String healthCode = healthCodes.get(i);
+            String body = (bodyFactory == null) ? null : bodyFactory.apply(user);
+            tasks.add(() -> {
+                stats.time(() -> {
+                    Request request = (bodyFactory == null) ?
+                            Request.Post(host + "/v1/cuimc/participants/healthcode:" + healthCode + "/laborders") :
+                            Request.Put(host + "/v1/cuimc/" + type).bodyString(body, APPLICATION_JSON);
+                    HttpResponse response = request.addHeader("Authorization", "Basic " + credentials)
+                            .execute().returnResponse();
+                    int status = response.getStatusLine().getStatusCode();
+                    String message = EntityUtils.toString(response.getEntity());
+                    if (status != 200 && status != 201) {
+                        throw new IOException(type + " returned " + status + ": " + message);
+                    }
+                    return status;
+                });
+                return null;
+            });
+        }
+        long start = System.nanoTime();
+        PerfStats.runConcurrently(threads, tasks);
+        long elapsed = System.nanoTime() - start;
+        LOG.info("{} round {}: {} requests in {} ms ({} requests/s)", type, round + 1, tasks.size(),
+                elapsed / 1_000_000, (elapsed == 0) ? 0 : (tasks.size() * 1_000_000_000L) / elapsed);
+        stats.log(LOG);
+        assertEquals(0, stats.getErrors());
+    }
+
+    private void measureEncode(String name, int iterations, Runnable encode) {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocationBean = (bean instanceof com.sun.management.ThreadMXBean) ?
+                (com.sun.management.ThreadMXBean) bean : null;
+        long threadId = Thread.currentThread().getId();
+
+        PerfStats stats = new PerfStats(name);
+        long allocatedBefore = (allocationBean == null) ? 0 : allocationBean.getThreadAllocatedBytes(threadId);
+        for (int i=0; i < iterations; i++) {
+            long start = System.nanoTime();
+            encode.run();
+            stats.record(System.nanoTime() - start);
+        }
+        long allocated = (allocationBean == null) ? 0 :
+                allocationBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        stats.log(LOG);
+        if (allocationBean != null) {
+            LOG.info("{}: {} bytes allocated per encode", name, allocated / Math.max(1, iterations));
+        }
+    }
+
+    private static String encode(PerfStats encodeStats, IBaseResource resource) throws Exception {
+        return encodeStats.time(() -> CONTEXT.newJsonParser().encodeResourceToString(resource));
+    }
+
+    private static Reference userReference(String userId) {
+        Identifier id = new Identifier();
+        id.setSystem(USER_ID_VALUE_NS);
+        id.setValue(userId);
+        Reference ref = new Reference();
+        ref.setIdentifier(id);
+        return ref;
+    }
+
+    private static Appointment appointment(String userId) {
+        Appointment appointment = new Appointment();
+        appointment.setId("appointment-" + userId);
+        appointment.setStatus(BOOKED);
+        AppointmentParticipantComponent idComp = new AppointmentParticipantComponent();
+        idComp.setActor(userReference(userId));
+        appointment.addParticipant(idComp);
+        return appointment;
+    }
+
+    private static ProcedureRequest procedureRequest(String userId) {
+        ProcedureRequest procedure = new ProcedureRequest();
+        procedure.setId("procedure-" + userId);
+        procedure.setSubject(userReference(userId));
+        return procedure;
+    }
+
+    private static Observation observation(String userId, int index) {
+        Observation observation = new Observation();
+        observation.setId("observation-" + userId);
+        observation.setCode(new CodeableConcept().addCoding(new Coding()
+                .setCode(OBSERVATION_CODES[index % OBSERVATION_CODES.length])));
+        Extension extension = new Extension();
+        extension.setUrl("some-value");
+        extension.setValue(new StringType("Positive"));
+        Range range = new Range();
+        range.addExtension(extension);
+        observation.setValue(range);
+        observation.setSubject(userReference(userId));
+        return observation;
+    }
+}
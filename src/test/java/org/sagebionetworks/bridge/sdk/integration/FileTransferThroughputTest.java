@@ -0,0 +1,342 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.sagebionetworks.bridge.rest.model.FileDisposition.INLINE;
+import static org.sagebionetworks.bridge.rest.model.Role.DEVELOPER;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.rest.RestUtils;
+import org.sagebionetworks.bridge.rest.api.ForAdminsApi;
+import org.sagebionetworks.bridge.rest.api.ForConsentedUsersApi;
+import org.sagebionetworks.bridge.rest.api.ForDevelopersApi;
+import org.sagebionetworks.bridge.rest.api.HostedFilesApi;
+import org.sagebionetworks.bridge.rest.exceptions.BridgeSDKException;
+import org.sagebionetworks.bridge.rest.model.FileMetadata;
+import org.sagebionetworks.bridge.rest.model.FileRevision;
+import org.sagebionetworks.bridge.rest.model.ParticipantFile;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+import okhttp3.ResponseBody;
+
+/**
+ * Uploads and downloads hosted files (createFile) and participant files (createParticipantFile) of increasing
+ * sizes, with several concurrent streams, and reports throughput in MB/s, time to first byte of each download,
+ * and the latency of the metadata calls around each transfer. Sizes are given in KB with
+ * -Dperf.files.sizesKb=1,1024,1048576 (1 KB to 1 GB). Each stream uses its own participant, because participant
+ * file downloads are rate limited per participant, and each batch of participant file downloads waits
+ * -Dperf.files.refillMs after the previous one for the participants' buckets to refill. Downloads that are
+ * throttled anyway are counted separately rather than failing the run. Every download is checked to return as
+ * many bytes as were uploaded, and with the stand-in, so is every upload.
+ *
+ * Transfers go to the pre-signed S3 URLs returned by Bridge. Where AWS is not available, run with
+ * -Dperf.files.localS3=true to send the transfers to a {@link LocalS3StandIn} instead; the metadata calls still
+ * go to Bridge. Scale with -Dperf.files.streams and -Dperf.files.repeats.
+ */
+@Category(PerformanceTest.class)
+public class FileTransferThroughputTest {
+    private static final Logger LOG = LoggerFactory.getLogger(FileTransferThroughputTest.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String MIME_TYPE = "text/plain";
+
+    private final int streams = PerfStats.param("files.streams", 4);
+    private final int repeats = PerfStats.param("files.repeats", 2);
+    private final int refillMillis = PerfStats.param("files.refillMs", 10000);
+    private final boolean useLocalS3 = Boolean.getBoolean("perf.files.localS3");
+    private final List<Long> sizesKb = new ArrayList<>();
+
+    private TestUser admin;
+    private TestUser developer;
+    private List<TestUser> participants = new ArrayList<>();
+    private List<String> hostedFileGuids = Collections.synchronizedList(new ArrayList<>());
+    private LocalS3StandIn s3;
+    private long lastDownloadsEndedOn;
+
+    private final PerfStats createFileStats = new PerfStats("createFile");
+    private final PerfStats revisionsStats = new PerfStats("getFileRevisions");
+    private final PerfStats createParticipantFileStats = new PerfStats("createParticipantFile");
+    private final PerfStats deleteParticipantFileStats = new PerfStats("deleteParticipantFile");
+
+    @Before
+    public void before() throws Exception {
+        for (String size : System.getProperty("perf.files.sizesKb", "1,1024,16384").split(",")) {
+            sizesKb.add(Long.parseLong(size.trim()));
+        }
+        admin = TestUserHelper.getSignedInAdmin();
+        developer = TestUserHelper.createAndSignInUser(FileTransferThroughputTest.class, false, DEVELOPER);
+        List<Callable<TestUser>> tasks = new ArrayList<>();
+        for (int i=0; i < streams; i++) {
+            tasks.add(() -> TestUserHelper.createAndSignInUser(FileTransferThroughputTest.class, true));
+        }
+        participants = PerfStats.runConcurrently(streams, tasks);
+        if (useLocalS3) {
+            s3 = new LocalS3StandIn();
+            s3.start(streams * 2);
+        }
+    }
+
+    @After
+    public void after() throws Exception {
+        if (s3 != null) {
+            s3.stop();
+        }
+        ForAdminsApi adminsApi = admin.getClient(ForAdminsApi.class);
+        for (String guid : hostedFileGuids) {
+            adminsApi.deleteFile(guid, true).execute();
+        }
+        for (TestUser participant : participants) {
+            participant.signOutAndDeleteUser();
+        }
+        if (developer != null) {
+            developer.signOutAndDeleteUser();
+        }
+    }
+
+    @Test
+    public void transferThroughput() throws Exception {
+        long bytesPerDirection = 0;
+        for (Long sizeKb : sizesKb) {
+            long size = sizeKb * 1024;
+            bytesPerDirection += size * repeats * (streams + participants.size());
+            File file = File.createTempFile("FileTransferThroughputTest", ".txt");
+            try {
+                if (!useLocalS3) {
+                    writeFile(file, size);
+                }
+                transferHostedFiles(file, size);
+                transferParticipantFiles(size);
+            } finally {
+                file.delete();
+            }
+        }
+        LOG.info("{} concurrent streams, {} transfers per stream per size, to {}", streams, repeats,
+                useLocalS3 ? "the local S3 stand-in" : "S3");
+        createFileStats.log(LOG);
+        revisionsStats.log(LOG);
+        createParticipantFileStats.log(LOG);
+        deleteParticipantFileStats.log(LOG);
+        if (useLocalS3) {
+            assertEquals(bytesPerDirection, s3.getBytesReceived());
+            assertEquals(bytesPerDirection, s3.getBytesSent());
+        }
+    }
+
+    private void transferHostedFiles(File file, long size) throws Exception {
+        ForDevelopersApi devsApi = developer.getClient(ForDevelopersApi.class);
+        HostedFilesApi hostedFilesApi = developer.getClient(HostedFilesApi.class);
+        PerfStats uploadStats = new PerfStats("hosted file upload (" + label(size) + ")");
+        PerfStats downloadStats = new PerfStats("hosted file download (" + label(size) + ")");
+        PerfStats ttfbStats = new PerfStats("hosted file time to first byte (" + label(size) + ")");
+
+        List<Callable<String>> uploads = new ArrayList<>();
+        for (int i=0; i < streams * repeats; i++) {
+            uploads.add(() -> {
+                FileMetadata metadata = new FileMetadata().name("FileTransferThroughputTest " + label(size))
+                        .disposition(INLINE);
+                String guid = createFileStats.time(() -> devsApi.createFile(metadata).execute().body().getGuid());
+                hostedFileGuids.add(guid);
+                if (useLocalS3) {
+                    uploadStats.time(() -> put(s3.getUrl(guid), size));
+                    assertEquals(Long.valueOf(size), s3.getObjectSize(guid));
+                } else {
+                    uploadStats.time(() -> RestUtils.uploadHostedFileToS3(hostedFilesApi, guid, file));
+                }
+                return guid;
+            });
+        }
+        List<String> guids = timeBatch("Uploaded hosted files", size, uploads);
+
+        List<Callable<String>> downloads = new ArrayList<>();
+        for (String guid : guids) {
+            downloads.add(() -> {
+                String url;
+                if (useLocalS3) {
+                    url = s3.getUrl(guid);
+                } else {
+                    FileRevision revision = revisionsStats.time(() -> devsApi.getFileRevisions(guid, 0, 5)
+                            .execute().body().getItems().get(0));
+                    url = revision.getDownloadURL();
+                }
+                downloadStats.time(() -> get(url, size, ttfbStats));
+                return guid;
+            });
+        }
+        timeBatch("Downloaded hosted files", size, downloads);
+        uploadStats.log(LOG);
+        downloadStats.log(LOG);
+        ttfbStats.log(LOG);
+    }
+
+    private void transferParticipantFiles(long size) throws Exception {
+        PerfStats uploadStats = new PerfStats("participant file upload (" + label(size) + ")");
+        PerfStats downloadStats = new PerfStats("participant file download (" + label(size) + ")");
+        PerfStats ttfbStats = new PerfStats("participant file time to first byte (" + label(size) + ")");
+        AtomicInteger throttled = new AtomicInteger();
+
+        for (int repeat=0; repeat < repeats; repeat++) {
+            String fileId = "transfer-" + size + "-" + repeat;
+            List<Callable<String>> uploads = new ArrayList<>();
+            List<Callable<String>> downloads = new ArrayList<>();
+            for (TestUser participant : participants) {
+                ForConsentedUsersApi usersApi = participant.getClient(ForConsentedUsersApi.class);
+                String key = participant.getUserId() + "/" + fileId;
+                uploads.add(() -> {
+                    ParticipantFile file = new ParticipantFile().mimeType(MIME_TYPE);
+                    ParticipantFile keys = createParticipantFileStats.time(() -> usersApi
+                            .createParticipantFile(fileId, file).execute().body());
+                    uploadStats.time(() -> put(useLocalS3 ? s3.getUrl(key) : keys.getUploadUrl(), size));
+                    if (useLocalS3) {
+                        assertEquals(Long.valueOf(size), s3.getObjectSize(key));
+                    }
+                    return fileId;
+                });
+                downloads.add(() -> {
+                    if (useLocalS3) {
+                        downloadStats.time(() -> get(s3.getUrl(key), size, ttfbStats));
+                    } else {
+                        long start = System.nanoTime();
+                        ResponseBody body;
+                        try {
+                            body = usersApi.getParticipantFile(fileId).execute().body();
+                        } catch(BridgeSDKException e) {
+                            if (e.getStatusCode() != 429) {
+                                downloadStats.error();
+                                throw e;
+                            }
+                            throttled.incrementAndGet();
+                            deleteParticipantFileStats.time(() -> usersApi.deleteParticipantFile(fileId).execute());
+                            return fileId;
+                        }
+                        long read;
+                        try (InputStream in = body.byteStream()) {
+                            read = drain(in, start, ttfbStats);
+                        }
+                        downloadStats.record(System.nanoTime() - start);
+                        assertEquals(size, read);
+                    }
+                    deleteParticipantFileStats.time(() -> usersApi.deleteParticipantFile(fileId).execute());
+                    return fileId;
+                });
+            }
+            timeBatch("Uploaded participant files", size, uploads);
+            if (!useLocalS3) {
+                // Each participant downloads once per batch; wait out the refill so the batch isn't throttled
+                long wait = lastDownloadsEndedOn + refillMillis - System.currentTimeMillis();
+                if (wait > 0) {
+                    Thread.sleep(wait);
+                }
+            }
+            timeBatch("Downloaded participant files", size, downloads);
+            lastDownloadsEndedOn = System.currentTimeMillis();
+        }
+        uploadStats.log(LOG);
+        downloadStats.log(LOG);
+        ttfbStats.log(LOG);
+        if (throttled.get() > 0) {
+            LOG.warn("{} participant file downloads ({}) were throttled; raise -Dperf.files.refillMs", throttled.get(),
+                    label(size));
+        }
+    }
+
+    /** Run the transfers on one thread per stream and log the aggregate throughput. */
+    private List<String> timeBatch(String step, long size, List<Callable<String>> transfers) throws Exception {
+        long start = System.nanoTime();
+        List<String> results = PerfStats.runConcurrently(streams, transfers);
+        long elapsed = System.nanoTime() - start;
+        double megabytes = (size * transfers.size()) / (1024.0 * 1024.0);
+        LOG.info(String.format("%s: %d x %s in %d ms (%.2f MB/s)", step, transfers.size(), label(size),
+                elapsed / 1_000_000, (elapsed == 0) ? 0 : megabytes / (elapsed / 1_000_000_000.0)));
+        return results;
+    }
+
+    /** PUT size bytes of generated content to the URL, streaming it rather than holding it in memory. */
+    private static Object put(String url, long size) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestMethod("PUT");
+        connection.setRequestProperty("Content-Type", MIME_TYPE);
+        connection.setFixedLengthStreamingMode(size);
+        try (OutputStream out = connection.getOutputStream()) {
+            write(out, size);
+        }
+        int status = connection.getResponseCode();
+        connection.disconnect();
+        if (status != 200) {
+            throw new IOException("PUT returned " + status);
+        }
+        return null;
+    }
+
+    /** GET the URL, recording the time to the first byte, and return the number of bytes read. */
+    private static long get(String url, long size, PerfStats ttfbStats) throws IOException {
+        long start = System.nanoTime();
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try (InputStream in = connection.getInputStream()) {
+            long read = drain(in, start, ttfbStats);
+            assertEquals(size, read);
+            return read;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static long drain(InputStream in, long start, PerfStats ttfbStats) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        int read = in.read(buffer);
+        ttfbStats.record(System.nanoTime() - start);
+        while (read != -1) {
+            total += read;
+            read = in.read(buffer);
+        }
+        return total;
+    }
+
+    private static void writeFile(File file, long size) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            write(out, size);
+        }
+    }
+
+    private static void write(OutputStream out, long size) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (int i=0; i < buffer.length; i++) {
+            buffer[i] = (byte)('A' + (i % 26));
+        }
+        long remaining = size;
+        while (remaining > 0) {
+            int length = (int)Math.min(buffer.length, remaining);
+            out.write(buffer, 0, length);
+            remaining -= length;
+        }
+    }
+
+    private static String label(long size) {
+        if (size >= 1024 * 1024 * 1024) {
+            return (size / (1024 * 1024 * 1024)) + " GB";
+        } else if (size >= 1024 * 1024) {
+            return (size / (1024 * 1024)) + " MB";
+        }
+        return (size / 1024) + " KB";
+    }
+}
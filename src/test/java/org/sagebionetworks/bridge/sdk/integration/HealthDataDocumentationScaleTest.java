@@ -0,0 +1,197 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.sagebionetworks.bridge.rest.model.Role.RESEARCHER;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.rest.api.ForAdminsApi;
+import org.sagebionetworks.bridge.rest.api.ForResearchersApi;
+import org.sagebionetworks.bridge.rest.model.HealthDataDocumentation;
+import org.sagebionetworks.bridge.rest.model.HealthDataDocumentationList;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+/**
+ * Seeds thousands of health data documentation entries across several parent IDs, with documentation bodies
+ * of several sizes, then pages through each parent with getAllHealthDataDocumentationForParentId, fetches a
+ * sample of each size with getHealthDataDocumentationForId, and deletes half of each parent one identifier at
+ * a time and the rest with deleteAllHealthDataDocumentationForParentId. Reports write and fetch latency by
+ * size, paging throughput, and deletes per second for both delete paths. Sizes are given in KB with
+ * -Dperf.docs.sizesKb=1,32,256. Scale with -Dperf.docs.parents, -Dperf.docs.perParent, -Dperf.docs.pageSize,
+ * -Dperf.docs.samples (per size) and -Dperf.docs.threads.
+ */
+@Category(PerformanceTest.class)
+public class HealthDataDocumentationScaleTest {
+    private static final Logger LOG = LoggerFactory.getLogger(HealthDataDocumentationScaleTest.class);
+
+    private final int parentCount = PerfStats.param("docs.parents", 4);
+    private final int perParent = PerfStats.param("docs.perParent", 500);
+    private final int pageSize = PerfStats.param("docs.pageSize", 50);
+    private final int samples = PerfStats.param("docs.samples", 20);
+    private final int threads = PerfStats.param("docs.threads", 10);
+    private final List<Integer> sizesKb = new ArrayList<>();
+
+    private TestUser admin;
+    private TestUser researcher;
+    private String runId;
+    private List<String> parentIds = new ArrayList<>();
+
+    @Before
+    public void before() throws Exception {
+        for (String size : System.getProperty("perf.docs.sizesKb", "1,32,256").split(",")) {
+            sizesKb.add(Integer.parseInt(size.trim()));
+        }
+        admin = TestUserHelper.getSignedInAdmin();
+        researcher = TestUserHelper.createAndSignInUser(HealthDataDocumentationScaleTest.class, false, RESEARCHER);
+        runId = Tests.randomIdentifier(getClass());
+        for (int p=0; p < parentCount; p++) {
+            parentIds.add(runId + "-parent-" + p);
+        }
+    }
+
+    @After
+    public void after() throws Exception {
+        ForAdminsApi adminsApi = admin.getClient(ForAdminsApi.class);
+        try {
+            for (String parentId : parentIds) {
+                adminsApi.deleteAllHealthDataDocumentationForParentId(parentId).execute();
+            }
+        } finally {
+            if (researcher != null) {
+                researcher.signOutAndDeleteUser();
+            }
+        }
+    }
+
+    @Test
+    public void seedPageFetchAndDelete() throws Exception {
+        ForResearchersApi researchersApi = researcher.getClient(ForResearchersApi.class);
+        ForAdminsApi adminsApi = admin.getClient(ForAdminsApi.class);
+        Map<Integer, PerfStats> writeStatsBySize = new TreeMap<>();
+        Map<Integer, PerfStats> fetchStatsBySize = new TreeMap<>();
+        for (Integer sizeKb : sizesKb) {
+            writeStatsBySize.put(sizeKb, new PerfStats("createOrUpdateHealthDataDocumentation (" + sizeKb + " KB)"));
+            fetchStatsBySize.put(sizeKb, new PerfStats("getHealthDataDocumentationForId (" + sizeKb + " KB)"));
+        }
+
+        // Seed
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int p=0; p < parentCount; p++) {
+            for (int i=0; i < perParent; i++) {
+                int sizeKb = sizeKb(i);
+                String parentId = parentIds.get(p);
+                String identifier = identifier(p, i);
+                String title = "Entry " + i;
+                tasks.add(() -> {
+                    // Built in the task so only the documents in flight are held in memory
+                    HealthDataDocumentation doc = new HealthDataDocumentation();
+                    doc.setParentId(parentId);
+                    doc.setIdentifier(identifier);
+                    doc.setTitle(title);
+                    doc.setDocumentation(StringUtils.repeat('d', sizeKb * 1024));
+                    writeStatsBySize.get(sizeKb).time(() -> researchersApi.createOrUpdateHealthDataDocumentation(doc)
+                            .execute());
+                    return null;
+                });
+            }
+        }
+        long start = System.nanoTime();
+        PerfStats.runConcurrently(threads, tasks);
+        PerfStats.logRate(LOG, "Created", tasks.size(), "entries", System.nanoTime() - start);
+
+        // Page every parent
+        PerfStats pageStats = new PerfStats("getAllHealthDataDocumentationForParentId (page of " + pageSize + ")");
+        start = System.nanoTime();
+        int paged = 0;
+        for (String parentId : parentIds) {
+            Set<String> identifiers = new HashSet<>();
+            String offsetKey = null;
+            do {
+                String key = offsetKey;
+                HealthDataDocumentationList list = pageStats.time(() -> researchersApi
+                        .getAllHealthDataDocumentationForParentId(parentId, key, pageSize).execute().body());
+                for (HealthDataDocumentation doc : list.getItems()) {
+                    identifiers.add(doc.getIdentifier());
+                }
+                offsetKey = list.getNextPageOffsetKey();
+            } while (offsetKey != null);
+            assertEquals(perParent, identifiers.size());
+            paged += identifiers.size();
+        }
+        PerfStats.logRate(LOG, "Paged", paged, "entries", System.nanoTime() - start);
+
+        // Fetch samples of each size
+        List<Callable<Void>> fetches = new ArrayList<>();
+        for (int i=0; i < Math.min(perParent, samples * sizesKb.size()); i++) {
+            int sizeKb = sizeKb(i);
+            String identifier = identifier(i % parentCount, i);
+            fetches.add(() -> {
+                HealthDataDocumentation doc = fetchStatsBySize.get(sizeKb).time(() -> researchersApi
+                        .getHealthDataDocumentationForId(identifier).execute().body());
+                assertEquals(sizeKb * 1024, doc.getDocumentation().length());
+                return null;
+            });
+        }
+        PerfStats.runConcurrently(threads, fetches);
+
+        // Delete half of each parent one at a time, and the rest in bulk
+        PerfStats deleteStats = new PerfStats("deleteHealthDataDocumentationForIdentifier");
+        PerfStats deleteAllStats = new PerfStats("deleteAllHealthDataDocumentationForParentId");
+        List<Callable<Void>> deletes = new ArrayList<>();
+        for (int p=0; p < parentCount; p++) {
+            for (int i=0; i < perParent / 2; i++) {
+                String identifier = identifier(p, i);
+                deletes.add(() -> {
+                    deleteStats.time(() -> adminsApi.deleteHealthDataDocumentationForIdentifier(identifier)
+                            .execute());
+                    return null;
+                });
+            }
+        }
+        start = System.nanoTime();
+        PerfStats.runConcurrently(threads, deletes);
+        PerfStats.logRate(LOG, "Deleted one at a time", deletes.size(), "entries", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (String parentId : parentIds) {
+            deleteAllStats.time(() -> adminsApi.deleteAllHealthDataDocumentationForParentId(parentId).execute());
+        }
+        PerfStats.logRate(LOG, "Deleted in bulk", parentCount * (perParent - perParent / 2), "entries",
+                System.nanoTime() - start);
+
+        LOG.info("{} parents x {} entries, sizes {} KB", parentCount, perParent, sizesKb);
+        for (PerfStats stats : writeStatsBySize.values()) {
+            stats.log(LOG);
+        }
+        pageStats.log(LOG);
+        for (PerfStats stats : fetchStatsBySize.values()) {
+            stats.log(LOG);
+        }
+        deleteStats.log(LOG);
+        deleteAllStats.log(LOG);
+        assertEquals(0, deleteStats.getErrors() + deleteAllStats.getErrors());
+    }
+
+    private int sizeKb(int index) {
+        return sizesKb.get(index % sizesKb.size());
+    }
+
+    private String identifier(int parent, int index) {
+        return runId + "-p" + parent + "-" + String.format("%06d", index);
+    }
+}
@@ -0,0 +1,274 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.sagebionetworks.bridge.rest.model.Role.WORKER;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.sagebionetworks.bridge.rest.api.ForAdminsApi;
+import org.sagebionetworks.bridge.rest.api.ForSuperadminsApi;
+import org.sagebionetworks.bridge.rest.api.ForWorkersApi;
+import org.sagebionetworks.bridge.rest.api.HealthDataApi;
+import org.sagebionetworks.bridge.rest.api.InternalApi;
+import org.sagebionetworks.bridge.rest.api.ParticipantsApi;
+import org.sagebionetworks.bridge.rest.api.StudiesApi;
+import org.sagebionetworks.bridge.rest.model.HealthDataRecordEx3;
+import org.sagebionetworks.bridge.rest.model.HealthDataRecordEx3List;
+import org.sagebionetworks.bridge.rest.model.HealthDataSubmission;
+import org.sagebionetworks.bridge.rest.model.Study;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+import org.sagebionetworks.bridge.util.IntegTestUtils;
+
+/**
+ * Submits health data at high rates from many participants and measures how quickly it can be read back.
+ * Schemaless records are posted with submitHealthData, and their write-to-queryable delay is measured with
+ * getHealthDataByCreatedOn. Exporter 3 records are written as the upload pipeline writes them, through the
+ * worker createOrUpdateRecordEx3 API, with createdOn spread over a wide window; their write-to-queryable delay
+ * is measured separately for getRecordsEx3ForUser, getRecordsEx3ForApp and getRecordsEx3ForStudy, and then each
+ * listing API is paged over the whole window. Scale with -Dperf.healthdata.users, -Dperf.healthdata.records
+ * (per participant), -Dperf.healthdata.windowDays, -Dperf.healthdata.probes, -Dperf.healthdata.pageSize,
+ * -Dperf.healthdata.pollMs, -Dperf.healthdata.timeoutMs and -Dperf.healthdata.threads.
+ */
+@Category(PerformanceTest.class)
+public class HealthDataPipelineBenchmarkTest {
+    private static final Logger LOG = LoggerFactory.getLogger(HealthDataPipelineBenchmarkTest.class);
+
+    private static final String APP_ID = IntegTestUtils.TEST_APP_ID;
+    private static final String APP_VERSION = "version 1.0.0, build 2";
+    private static final String PHONE_INFO = "Integration Tests";
+
+    private final int userCount = PerfStats.param("healthdata.users", 10);
+    private final int recordsPerUser = PerfStats.param("healthdata.records", 20);
+    private final int windowDays = PerfStats.param("healthdata.windowDays", 30);
+    private final int probes = PerfStats.param("healthdata.probes", 5);
+    private final int pageSize = PerfStats.param("healthdata.pageSize", 50);
+    private final int pollMillis = PerfStats.param("healthdata.pollMs", 100);
+    private final int timeoutMillis = PerfStats.param("healthdata.timeoutMs", 30000);
+    private final int threads = PerfStats.param("healthdata.threads", 10);
+
+    private TestUser admin;
+    private TestUser worker;
+    private String studyId;
+    private List<TestUser> users = new ArrayList<>();
+    private List<String> healthCodes = new ArrayList<>();
+
+    @Before
+    public void before() throws Exception {
+        admin = TestUserHelper.getSignedInAdmin();
+        worker = TestUserHelper.createAndSignInUser(HealthDataPipelineBenchmarkTest.class, false, WORKER);
+
+        studyId = Tests.randomIdentifier(getClass());
+        admin.getClient(StudiesApi.class).createStudy(new Study().identifier(studyId).name(studyId)).execute();
+
+        List<Callable<TestUser>> tasks = new ArrayList<>();
+        for (int i=0; i < userCount; i++) {
+            tasks.add(() -> TestUserHelper.createAndSignInUser(HealthDataPipelineBenchmarkTest.class, true));
+        }
+        users = PerfStats.runConcurrently(threads, tasks);
+        ParticipantsApi participantsApi = admin.getClient(ParticipantsApi.class);
+        for (TestUser user : users) {
+            healthCodes.add(participantsApi.getParticipantById(user.getUserId(), false).execute().body()
+                    .getHealthCode());
+        }
+    }
+
+    @After
+    public void after() throws Exception {
+        ForSuperadminsApi superadminsApi = admin.getClient(ForSuperadminsApi.class);
+        try {
+            for (TestUser user : users) {
+                superadminsApi.deleteRecordsEx3ForUser(APP_ID, user.getUserId()).execute();
+                user.signOutAndDeleteUser();
+            }
+            if (worker != null) {
+                worker.signOutAndDeleteUser();
+            }
+        } finally {
+            admin.getClient(ForAdminsApi.class).deleteStudy(studyId, true).execute();
+        }
+    }
+
+    @Test
+    public void submitQueryAndPage() throws Exception {
+        ForWorkersApi workersApi = worker.getClient(ForWorkersApi.class);
+
+        // submitHealthData, many participants at once
+        PerfStats submitStats = new PerfStats("submitHealthData");
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (TestUser user : users) {
+            HealthDataApi healthDataApi = user.getClient(HealthDataApi.class);
+            for (int i=0; i < recordsPerUser; i++) {
+                HealthDataSubmission submission = submission(DateTime.now(DateTimeZone.UTC), i);
+                tasks.add(() -> {
+                    submitStats.time(() -> healthDataApi.submitHealthData(submission).execute());
+                    return null;
+                });
+            }
+        }
+        long start = System.nanoTime();
+        PerfStats.runConcurrently(threads, tasks);
+        PerfStats.logRate(LOG, "Submitted with submitHealthData", tasks.size(), "records", System.nanoTime() - start);
+
+        PerfStats submitVisibleStats = new PerfStats("submitHealthData to getHealthDataByCreatedOn delay");
+        for (int i=0; i < probes; i++) {
+            TestUser user = users.get(i % users.size());
+            DateTime createdOn = DateTime.now(DateTimeZone.UTC);
+            String recordId = user.getClient(HealthDataApi.class).submitHealthData(submission(createdOn, i))
+                    .execute().body().getId();
+            InternalApi internalApi = user.getClient(InternalApi.class);
+            waitUntilVisible(submitVisibleStats, () -> internalApi.getHealthDataByCreatedOn(createdOn, createdOn)
+                    .execute().body().getItems().stream().anyMatch(r -> r.getId().equals(recordId)));
+        }
+
+        // Exporter 3 records, spread over the createdOn window
+        DateTime windowEnd = DateTime.now(DateTimeZone.UTC);
+        DateTime windowStart = windowEnd.minusDays(windowDays);
+        long stepMillis = (windowEnd.getMillis() - windowStart.getMillis()) / Math.max(1, recordsPerUser);
+        PerfStats writeStats = new PerfStats("createOrUpdateRecordEx3");
+        tasks = new ArrayList<>();
+        for (String healthCode : healthCodes) {
+            for (int i=0; i < recordsPerUser; i++) {
+                HealthDataRecordEx3 record = record(healthCode, windowStart.plus(i * stepMillis));
+                tasks.add(() -> {
+                    writeStats.time(() -> workersApi.createOrUpdateRecordEx3(APP_ID, record).execute());
+                    return null;
+                });
+            }
+        }
+        start = System.nanoTime();
+        PerfStats.runConcurrently(threads, tasks);
+        PerfStats.logRate(LOG, "Wrote with createOrUpdateRecordEx3", tasks.size(), "records",
+                System.nanoTime() - start);
+        int written = tasks.size();
+
+        PerfStats userVisibleStats = new PerfStats("createOrUpdateRecordEx3 to getRecordsEx3ForUser delay");
+        PerfStats appVisibleStats = new PerfStats("createOrUpdateRecordEx3 to getRecordsEx3ForApp delay");
+        PerfStats studyVisibleStats = new PerfStats("createOrUpdateRecordEx3 to getRecordsEx3ForStudy delay");
+        for (int i=0; i < probes; i++) {
+            TestUser user = users.get(i % users.size());
+            // Unique to the millisecond, so the one-millisecond query windows only hold this record
+            DateTime createdOn = windowEnd.plusMinutes(1).plusMillis(i * 10);
+            DateTime queryStart = createdOn.minusMillis(1);
+            DateTime queryEnd = createdOn.plusMillis(1);
+            String recordId = workersApi.createOrUpdateRecordEx3(APP_ID,
+                    record(healthCodes.get(i % users.size()), createdOn)).execute().body().getId();
+            written++;
+
+            // Time the three query types from the same write, in parallel
+            List<Callable<Void>> waits = new ArrayList<>();
+            waits.add(() -> waitUntilVisible(userVisibleStats, () -> contains(workersApi.getRecordsEx3ForUser(
+                    APP_ID, user.getUserId(), queryStart, queryEnd, null, null).execute().body(), recordId)));
+            waits.add(() -> waitUntilVisible(appVisibleStats, () -> contains(workersApi.getRecordsEx3ForApp(
+                    APP_ID, queryStart, queryEnd, null, null).execute().body(), recordId)));
+            waits.add(() -> waitUntilVisible(studyVisibleStats, () -> contains(workersApi.getRecordsEx3ForStudy(
+                    APP_ID, studyId, queryStart, queryEnd, null, null).execute().body(), recordId)));
+            PerfStats.runConcurrently(3, waits);
+        }
+
+        // Page the listing APIs over the whole window
+        DateTime pageEnd = windowEnd.plusMinutes(2);
+        PerfStats userPageStats = new PerfStats("getRecordsEx3ForUser (page of " + pageSize + ")");
+        PerfStats appPageStats = new PerfStats("getRecordsEx3ForApp (page of " + pageSize + ")");
+        PerfStats studyPageStats = new PerfStats("getRecordsEx3ForStudy (page of " + pageSize + ")");
+
+        start = System.nanoTime();
+        int userRecords = 0;
+        for (TestUser user : users) {
+            userRecords += page(offsetKey -> userPageStats.time(() -> workersApi.getRecordsEx3ForUser(APP_ID,
+                    user.getUserId(), windowStart, pageEnd, pageSize, offsetKey).execute().body()));
+        }
+        PerfStats.logRate(LOG, "Paged getRecordsEx3ForUser", userRecords, "records", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        int studyRecords = page(offsetKey -> studyPageStats.time(() -> workersApi.getRecordsEx3ForStudy(APP_ID,
+                studyId, windowStart, pageEnd, pageSize, offsetKey).execute().body()));
+        PerfStats.logRate(LOG, "Paged getRecordsEx3ForStudy", studyRecords, "records", System.nanoTime() - start);
+
+        // The app listing also holds every other record in the shared test app for the window
+        start = System.nanoTime();
+        int appRecords = page(offsetKey -> appPageStats.time(() -> workersApi.getRecordsEx3ForApp(APP_ID,
+                windowStart, pageEnd, pageSize, offsetKey).execute().body()));
+        PerfStats.logRate(LOG, "Paged getRecordsEx3ForApp", appRecords, "records", System.nanoTime() - start);
+
+        LOG.info("{} participants x {} records, Exporter 3 records spread over {} days", userCount, recordsPerUser,
+                windowDays);
+        submitStats.log(LOG);
+        submitVisibleStats.log(LOG);
+        writeStats.log(LOG);
+        userVisibleStats.log(LOG);
+        appVisibleStats.log(LOG);
+        studyVisibleStats.log(LOG);
+        userPageStats.log(LOG);
+        studyPageStats.log(LOG);
+        appPageStats.log(LOG);
+
+        assertEquals(0, submitStats.getErrors() + writeStats.getErrors());
+        // Records that never became visible within -Dperf.healthdata.timeoutMs
+        assertEquals(0, submitVisibleStats.getErrors() + userVisibleStats.getErrors() + appVisibleStats.getErrors()
+                + studyVisibleStats.getErrors());
+        assertEquals(written, userRecords);
+        assertEquals(written, studyRecords);
+    }
+
+    /** Poll until the check passes, recording the delay, or count an error at the timeout. */
+    private Void waitUntilVisible(PerfStats stats, Callable<Boolean> check) throws Exception {
+        long start = System.nanoTime();
+        long deadline = start + timeoutMillis * 1_000_000L;
+        while (System.nanoTime() < deadline) {
+            if (check.call()) {
+                stats.record(System.nanoTime() - start);
+                return null;
+            }
+            Thread.sleep(pollMillis);
+        }
+        LOG.warn("{}: record not visible after {} ms", stats.getName(), timeoutMillis);
+        stats.error();
+        return null;
+    }
+
+    /** Follow the offset keys to the end and return the number of records. */
+    private int page(ThrowingFunction<String, HealthDataRecordEx3List> getPage) throws Exception {
+        int count = 0;
+        String offsetKey = null;
+        do {
+            HealthDataRecordEx3List list = getPage.apply(offsetKey);
+            count += list.getItems().size();
+            offsetKey = list.getNextPageOffsetKey();
+        } while (offsetKey != null);
+        return count;
+    }
+
+    private static boolean contains(HealthDataRecordEx3List list, String recordId) {
+        return list.getItems().stream().anyMatch(r -> r.getId().equals(recordId));
+    }
+
+    private HealthDataRecordEx3 record(String healthCode, DateTime createdOn) {
+        HealthDataRecordEx3 record = new HealthDataRecordEx3();
+        record.setCreatedOn(createdOn);
+        record.setHealthCode(healthCode);
+        record.setStudyId(studyId);
+        record.putMetadataItem("source", "HealthDataPipelineBenchmarkTest");
+        return record;
+    }
+
+    private static HealthDataSubmission submission(DateTime createdOn, int index) {
+        Map<String, String> data = ImmutableMap.of("index", String.valueOf(index), "foo", "bar");
+        return new HealthDataSubmission().appVersion(APP_VERSION).createdOn(createdOn).data(data)
+                .phoneInfo(PHONE_INFO);
+    }
+}
@@ -0,0 +1,245 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.fluent.Request;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.rest.api.AppsApi;
+import org.sagebionetworks.bridge.rest.model.App;
+import org.sagebionetworks.bridge.rest.model.Role;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+/**
+ * Measures what participant IP locking costs under load. Like {@link IpLockingTest}, this makes raw HTTP requests
+ * so it can spoof the X-Forwarded-For header. For each state of the app's participantIpLockingEnabled flag (given
+ * in order with -Dperf.iplock.states=false,true,false,true, so warm-up and drift show up as a difference between
+ * the two runs of a state), every participant signs in from its own address and sends requests from it
+ * concurrently; the difference in latency between the states is the per-request cost of the check.
+ *
+ * Then participants move between addresses as phones do between networks. With locking enabled, each move is a
+ * rejected request, a check that the old session no longer works from the old address, and a new sign in; with it
+ * disabled, each move is just a request from the new address. Every move is checked to have been rejected, and the
+ * old session invalidated, with locking enabled, and none with it disabled. Reports the latency of each step, the added
+ * latency per move, and session churn (sessions invalidated and replaced per second). Scale with
+ * -Dperf.iplock.users, -Dperf.iplock.requests (per participant and state), -Dperf.iplock.moves (per participant)
+ * and -Dperf.iplock.threads.
+ */
+@Category(PerformanceTest.class)
+public class IpLockingOverheadTest {
+    private static final Logger LOG = LoggerFactory.getLogger(IpLockingOverheadTest.class);
+
+    private static final ObjectMapper JSON_OBJECT_MAPPER = new ObjectMapper();
+    private static final String LOAD_BALANCER = ", 10.255.0.1";
+
+    private final int userCount = PerfStats.param("iplock.users", 50);
+    private final int requests = PerfStats.param("iplock.requests", 20);
+    private final int moves = PerfStats.param("iplock.moves", 5);
+    private final int threads = PerfStats.param("iplock.threads", 20);
+    private final List<Boolean> states = new ArrayList<>();
+
+    private TestUser developer;
+    private List<TestUser> users = new ArrayList<>();
+    private String hostUrl;
+    private boolean originalState;
+
+    @Before
+    public void before() throws Exception {
+        for (String state : System.getProperty("perf.iplock.states", "false,true,false,true").split(",")) {
+            states.add(Boolean.parseBoolean(state.trim()));
+        }
+        developer = TestUserHelper.createAndSignInUser(IpLockingOverheadTest.class, true, Role.DEVELOPER);
+        hostUrl = developer.getClientManager().getHostUrl();
+        originalState = developer.getClient(AppsApi.class).getUsersApp().execute().body()
+                .isParticipantIpLockingEnabled();
+
+        List<Callable<TestUser>> tasks = new ArrayList<>();
+        for (int i=0; i < userCount; i++) {
+            tasks.add(() -> TestUserHelper.createAndSignInUser(IpLockingOverheadTest.class, true));
+        }
+        users = PerfStats.runConcurrently(threads, tasks);
+    }
+
+    @After
+    public void after() throws Exception {
+        try {
+            updateIpLockingFlag(originalState);
+        } finally {
+            for (TestUser user : users) {
+                user.signOutAndDeleteUser();
+            }
+            if (developer != null) {
+                developer.signOutAndDeleteUser();
+            }
+        }
+    }
+
+    @Test
+    public void lockingOverheadAndSessionChurn() throws Exception {
+        Map<Boolean, List<PerfStats>> requestStatsByState = new TreeMap<>();
+        for (int run=0; run < states.size(); run++) {
+            boolean enabled = states.get(run);
+            updateIpLockingFlag(enabled);
+            PerfStats stats = new PerfStats("GET /v1/activityevents, locking " + (enabled ? "enabled" : "disabled")
+                    + " (run " + run + ")");
+            Map<String, AtomicInteger> unexpected = new ConcurrentHashMap<>();
+
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int u=0; u < users.size(); u++) {
+                TestUser user = users.get(u);
+                String address = address(run, u, 0);
+                tasks.add(() -> {
+                    String sessionId = signIn(user, address);
+                    for (int r=0; r < requests; r++) {
+                        int status = stats.time(() -> request(sessionId, address));
+                        expect(200, status, unexpected);
+                    }
+                    return null;
+                });
+            }
+            PerfStats.runConcurrently(threads, tasks);
+            stats.log(LOG);
+            assertNoneUnexpected(stats.getName(), unexpected);
+            requestStatsByState.computeIfAbsent(enabled, key -> new ArrayList<>()).add(stats);
+        }
+        if (requestStatsByState.size() == 2) {
+            PerfStats disabled = requestStatsByState.get(false).get(requestStatsByState.get(false).size() - 1);
+            PerfStats enabled = requestStatsByState.get(true).get(requestStatsByState.get(true).size() - 1);
+            LOG.info(String.format("Added latency with locking enabled (last runs): mean %+.1f ms, p50 %+.1f ms, "
+                    + "p99 %+.1f ms", enabled.meanMillis() - disabled.meanMillis(),
+                    enabled.percentileMillis(50) - disabled.percentileMillis(50),
+                    enabled.percentileMillis(99) - disabled.percentileMillis(99)));
+        }
+
+        moveBetweenNetworks(false);
+        moveBetweenNetworks(true);
+    }
+
+    private void moveBetweenNetworks(boolean enabled) throws Exception {
+        updateIpLockingFlag(enabled);
+        String suffix = ", locking " + (enabled ? "enabled" : "disabled");
+        PerfStats movedStats = new PerfStats("Request from a new address" + suffix);
+        PerfStats oldAddressStats = new PerfStats("Request from the old address after the move" + suffix);
+        PerfStats signInStats = new PerfStats("signIn from the new address" + suffix);
+        PerfStats moveStats = new PerfStats("Whole move, including any new sign in" + suffix);
+        Map<String, AtomicInteger> unexpected = new ConcurrentHashMap<>();
+        AtomicInteger invalidated = new AtomicInteger();
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int u=0; u < users.size(); u++) {
+            TestUser user = users.get(u);
+            int userIndex = u;
+            tasks.add(() -> {
+                String address = address(states.size(), userIndex, 0);
+                String sessionId = signIn(user, address);
+                for (int m=1; m <= moves; m++) {
+                    String oldAddress = address;
+                    address = address(states.size(), userIndex, m);
+                    String newAddress = address;
+                    String oldSession = sessionId;
+                    long start = System.nanoTime();
+                    int status = movedStats.time(() -> request(oldSession, newAddress));
+                    expect(enabled ? 401 : 200, status, unexpected);
+                    if (status == 401) {
+                        // The app signs in again; the time to recover is part of the cost of the move
+                        sessionId = signInStats.time(() -> signIn(user, newAddress));
+                        moveStats.record(System.nanoTime() - start);
+                        int oldStatus = oldAddressStats.time(() -> request(oldSession, oldAddress));
+                        if (oldStatus == 401) {
+                            invalidated.incrementAndGet();
+                        }
+                    } else {
+                        moveStats.record(System.nanoTime() - start);
+                    }
+                }
+                return null;
+            });
+        }
+        long start = System.nanoTime();
+        PerfStats.runConcurrently(threads, tasks);
+        long nanos = System.nanoTime() - start;
+
+        movedStats.log(LOG);
+        signInStats.log(LOG);
+        oldAddressStats.log(LOG);
+        moveStats.log(LOG);
+        LOG.info(String.format("%d moves%s: %d sessions replaced (%.1f/s), %d old sessions invalidated",
+                moveStats.getCount(), suffix, signInStats.getCount(),
+                (nanos == 0) ? 0 : signInStats.getCount() / (nanos / 1_000_000_000.0), invalidated.get()));
+        assertNoneUnexpected("Moves" + suffix, unexpected);
+        int rejectedMoves = enabled ? users.size() * moves : 0;
+        assertEquals(rejectedMoves, signInStats.getCount());
+        assertEquals(rejectedMoves, invalidated.get());
+    }
+
+    private void updateIpLockingFlag(boolean participantIpLockingEnabled) throws Exception {
+        AppsApi appsApi = developer.getClient(AppsApi.class);
+        App app = appsApi.getUsersApp().execute().body();
+        if (app.isParticipantIpLockingEnabled() != participantIpLockingEnabled) {
+            app.setParticipantIpLockingEnabled(participantIpLockingEnabled);
+            appsApi.updateUsersApp(app).execute();
+        }
+    }
+
+    private String signIn(TestUser user, String address) throws Exception {
+        String signInText = "{\n" +
+                "   \"appId\":\"" + user.getAppId() + "\",\n" +
+                "   \"email\":\"" + user.getEmail() + "\",\n" +
+                "   \"password\":\"" + user.getPassword() + "\"\n" +
+                "}";
+        HttpResponse signInResponse = Request.Post(hostUrl + "/v3/auth/signIn")
+                .setHeader("X-Forwarded-For", address + LOAD_BALANCER)
+                .body(new StringEntity(signInText)).execute().returnResponse();
+        assertEquals(200, signInResponse.getStatusLine().getStatusCode());
+
+        JsonNode signInBodyNode = JSON_OBJECT_MAPPER.readTree(EntityUtils.toString(signInResponse.getEntity()));
+        String sessionId = signInBodyNode.get("sessionToken").textValue();
+        assertNotNull(sessionId);
+        return sessionId;
+    }
+
+    private int request(String sessionId, String address) throws Exception {
+        HttpResponse response = Request.Get(hostUrl + "/v1/activityevents")
+                .setHeader("Bridge-Session", sessionId)
+                .setHeader("X-Forwarded-For", address + LOAD_BALANCER)
+                .execute().returnResponse();
+        EntityUtils.consume(response.getEntity());
+        return response.getStatusLine().getStatusCode();
+    }
+
+    // A distinct address for each run, participant and network
+    private static String address(int run, int user, int network) {
+        return "198.51." + (run * 16 + network % 16) + "." + (user % 250 + 1);
+    }
+
+    private static void expect(int expected, int status, Map<String, AtomicInteger> unexpected) {
+        if (status != expected) {
+            unexpected.computeIfAbsent(Integer.toString(status), key -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+
+    private static void assertNoneUnexpected(String name, Map<String, AtomicInteger> unexpected) {
+        assertTrue(name + ": unexpected status codes " + new TreeMap<>(unexpected), unexpected.isEmpty());
+    }
+}
@@ -0,0 +1,292 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.sagebionetworks.bridge.sdk.integration.StandInRequests.parseForm;
+import static org.sagebionetworks.bridge.sdk.integration.StandInRequests.read;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local HTTP server that plays the external identity providers in Bridge's sign-in flows, so OAuth scenarios can
+ * run without real Synapse credentials and with a known, adjustable provider latency. It answers:
+ * <ul>
+ *   <li>the Synapse calls a client makes before signing in to Bridge (auth/v1/login and auth/v1/oauth2/consent,
+ *   relative to {@link #getSynapseEndpoint()}), issuing an authorization code for the user;</li>
+ *   <li>the Synapse calls Bridge makes to exchange that code (auth/v1/oauth2/token, userinfo and jwks), returning
+ *   an ID token signed with a key generated for this instance;</li>
+ *   <li>an OAuth 2.0 token endpoint for an app's OAuth provider ({@link #getVendorTokenEndpoint()}), answering
+ *   authorization code and refresh token grants in the style of Fitbit.</li>
+ * </ul>
+ * Every call is delayed by a configurable time to model the provider. Time spent answering the code exchange calls
+ * is accumulated per authorization code, so a scenario can split a Bridge sign-in into external-call time and
+ * Bridge's own time. Bridge only calls the stand-in if it is configured to, so the server-side calls need a locally
+ * running Bridge stack whose Synapse endpoint is the stand-in.
+ */
+public class LocalIdentityStandIn {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String KEY_ID = "local-identity-stand-in";
+    private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+
+    private final String host;
+    private final KeyPair keyPair;
+    private final Map<String, String> userIdsByUsername = new ConcurrentHashMap<>();
+    private final Map<String, String> userIdsBySessionToken = new ConcurrentHashMap<>();
+    private final Map<String, String> userIdsByCode = new ConcurrentHashMap<>();
+    private final Map<String, String> codesByAccessToken = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> nanosByCode = new ConcurrentHashMap<>();
+    private final AtomicLong unattributedNanos = new AtomicLong();
+    private final AtomicLong serverCalls = new AtomicLong();
+    private final AtomicLong synapseServerCalls = new AtomicLong();
+    private volatile long delayMillis;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /** @param host the host name to put in endpoints; it must be reachable from the caller */
+    public LocalIdentityStandIn(String host) throws GeneralSecurityException {
+        this.host = host;
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        this.keyPair = generator.generateKeyPair();
+    }
+
+    /**
+     * Start listening on an ephemeral port, on localhost when that is the host in endpoints and on all interfaces
+     * otherwise.
+     */
+    public void start() throws IOException {
+        InetSocketAddress address = "localhost".equals(host) ? new InetSocketAddress("localhost", 0)
+                : new InetSocketAddress(0);
+        server = HttpServer.create(address, 0);
+        server.createContext("/", this::handle);
+        executor = Executors.newFixedThreadPool(32);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /** The base URL in the form of the synapse.endpoint config value (with a trailing slash). */
+    public String getSynapseEndpoint() {
+        return "http://" + host + ":" + server.getAddress().getPort() + "/";
+    }
+
+    public String getVendorTokenEndpoint() {
+        return getSynapseEndpoint() + "vendor/oauth2/token";
+    }
+
+    /** Simulated provider time added to every call. */
+    public void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    /** Register a Synapse user who can log in with this username (any password is accepted). */
+    public void addUser(String username, String synapseUserId) {
+        userIdsByUsername.put(username, synapseUserId);
+    }
+
+    /** Time spent answering calls that exchanged or used this authorization code, in nanoseconds. */
+    public long getNanosForCode(String code) {
+        AtomicLong nanos = nanosByCode.get(code);
+        return (nanos == null) ? 0L : nanos.get();
+    }
+
+    /** Time spent answering server-side calls that could not be tied to a code (such as key set fetches). */
+    public long getUnattributedNanos() {
+        return unattributedNanos.get();
+    }
+
+    /** The number of calls made by the server side of the flows (code exchange, user info, keys). */
+    public long getServerCalls() {
+        return serverCalls.get();
+    }
+
+    /** The number of server-side calls to the Synapse endpoints, which Bridge only makes if it is pointed here. */
+    public long getSynapseServerCalls() {
+        return synapseServerCalls.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        String code = null;
+        boolean serverCall = true;
+        boolean synapseCall = true;
+        try {
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+            String path = exchange.getRequestURI().getPath();
+            String body = read(exchange.getRequestBody());
+            ObjectNode response = MAPPER.createObjectNode();
+            if (path.endsWith("/auth/v1/login")) {
+                serverCall = false;
+                JsonNode login = MAPPER.readTree(body);
+                String userId = userIdsByUsername.get(login.path("username").asText());
+                if (userId == null) {
+                    reply(exchange, 401, error("invalid_grant"), start, code, serverCall, synapseCall);
+                    return;
+                }
+                String sessionToken = UUID.randomUUID().toString();
+                userIdsBySessionToken.put(sessionToken, userId);
+                response.put("sessionToken", sessionToken);
+            } else if (path.endsWith("/auth/v1/oauth2/consent")) {
+                serverCall = false;
+                String userId = userIdsBySessionToken.get(String.valueOf(exchange.getRequestHeaders()
+                        .getFirst("sessiontoken")));
+                if (userId == null) {
+                    reply(exchange, 401, error("invalid_token"), start, code, serverCall, synapseCall);
+                    return;
+                }
+                String newCode = UUID.randomUUID().toString();
+                userIdsByCode.put(newCode, userId);
+                response.put("access_code", newCode);
+            } else if (path.endsWith("/auth/v1/oauth2/token")) {
+                Map<String, String> form = parseForm(body);
+                code = form.get("code");
+                String userId = (code == null) ? null : userIdsByCode.get(code);
+                if (userId == null) {
+                    reply(exchange, 400, error("invalid_grant"), start, code, serverCall, synapseCall);
+                    return;
+                }
+                String accessToken = UUID.randomUUID().toString();
+                codesByAccessToken.put(accessToken, code);
+                response.put("access_token", accessToken);
+                response.put("token_type", "Bearer");
+                response.put("expires_in", 3600);
+                response.put("id_token", idToken(userId, form.get("client_id")));
+            } else if (path.endsWith("/auth/v1/oauth2/userinfo")) {
+                String authorization = String.valueOf(exchange.getRequestHeaders().getFirst("Authorization"));
+                code = codesByAccessToken.get(authorization.replaceFirst("(?i)^Bearer ", ""));
+                String userId = (code == null) ? null : userIdsByCode.get(code);
+                if (userId == null) {
+                    reply(exchange, 401, error("invalid_token"), start, code, serverCall, synapseCall);
+                    return;
+                }
+                response.put("sub", userId);
+                response.put("userid", userId);
+            } else if (path.endsWith("/auth/v1/oauth2/jwks")) {
+                RSAPublicKey key = (RSAPublicKey)keyPair.getPublic();
+                ObjectNode jwk = response.putArray("keys").addObject();
+                jwk.put("kty", "RSA");
+                jwk.put("kid", KEY_ID);
+                jwk.put("alg", "RS256");
+                jwk.put("use", "sig");
+                jwk.put("n", BASE64_URL.encodeToString(unsigned(key.getModulus())));
+                jwk.put("e", BASE64_URL.encodeToString(unsigned(key.getPublicExponent())));
+            } else if (path.endsWith("/vendor/oauth2/token")) {
+                synapseCall = false;
+                Map<String, String> form = parseForm(body);
+                code = form.containsKey("code") ? form.get("code") : form.get("refresh_token");
+                response.put("access_token", UUID.randomUUID().toString());
+                response.put("refresh_token", UUID.randomUUID().toString());
+                response.put("token_type", "Bearer");
+                response.put("expires_in", 28800);
+                response.put("scope", "activity heartrate sleep");
+                response.put("user_id", "vendor-" + Math.abs(String.valueOf(code).hashCode()));
+            } else {
+                // Not a provider call, so it doesn't count toward either kind of server call
+                reply(exchange, 404, error("not_found"), start, code, false, false);
+                return;
+            }
+            reply(exchange, 200, response, start, code, serverCall, synapseCall);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch(GeneralSecurityException e) {
+            throw new IOException(e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Server calls are recorded before the response is written, so a caller that reads the totals as soon as its
+    // request returns sees this call in them
+    private void reply(HttpExchange exchange, int status, JsonNode json, long start, String code, boolean serverCall,
+            boolean synapseCall) throws IOException {
+        if (serverCall) {
+            long nanos = System.nanoTime() - start;
+            serverCalls.incrementAndGet();
+            if (synapseCall) {
+                synapseServerCalls.incrementAndGet();
+            }
+            if (code != null) {
+                nanosByCode.computeIfAbsent(code, key -> new AtomicLong()).addAndGet(nanos);
+            } else {
+                unattributedNanos.addAndGet(nanos);
+            }
+        }
+        send(exchange, status, json);
+    }
+
+    private String idToken(String userId, String clientId) throws GeneralSecurityException {
+        long now = System.currentTimeMillis() / 1000;
+        ObjectNode header = MAPPER.createObjectNode();
+        header.put("alg", "RS256");
+        header.put("kid", KEY_ID);
+        header.put("typ", "JWT");
+        ObjectNode claims = MAPPER.createObjectNode();
+        claims.put("iss", getSynapseEndpoint() + "auth/v1");
+        claims.put("sub", userId);
+        claims.put("aud", String.valueOf(clientId));
+        claims.put("iat", now);
+        claims.put("exp", now + 3600);
+        claims.put("userid", userId);
+        String signed = BASE64_URL.encodeToString(header.toString().getBytes(StandardCharsets.UTF_8)) + "."
+                + BASE64_URL.encodeToString(claims.toString().getBytes(StandardCharsets.UTF_8));
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(keyPair.getPrivate());
+        signature.update(signed.getBytes(StandardCharsets.US_ASCII));
+        return signed + "." + BASE64_URL.encodeToString(signature.sign());
+    }
+
+    private static ObjectNode error(String error) {
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put("error", error);
+        return node;
+    }
+
+    private static void send(HttpExchange exchange, int status, JsonNode json) throws IOException {
+        byte[] response = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+
+    // JWKs encode key integers as unsigned big-endian bytes
+    private static byte[] unsigned(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        return (bytes.length > 1 && bytes[0] == 0) ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes;
+    }
+}
@@ -0,0 +1,157 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.sagebionetworks.bridge.sdk.integration.StandInRequests.parseForm;
+import static org.sagebionetworks.bridge.sdk.integration.StandInRequests.read;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local HTTP server that accepts the SES and SNS calls Bridge makes to send email and SMS, so sign-up
+ * scenarios can point a locally running Bridge stack's email and SMS endpoints at it and record exactly when each
+ * verification or intent message would have gone out, without mailing or texting anyone. SES SendEmail and
+ * SendRawEmail and SNS Publish (to a phone number) are recorded; any other query protocol action is answered with
+ * an empty success so setup calls don't fail.
+ */
+public class LocalMessageSink {
+
+    public enum Channel { EMAIL, SMS }
+
+    private static final Pattern TO_HEADER = Pattern.compile("(?im)^To:\\s*(.+)$");
+    private static final Pattern ADDRESS = Pattern.compile("[^\\s<>,\"]+@[^\\s<>,\"]+");
+
+    private final int port;
+    private final List<DeliveredMessage> messages = Collections.synchronizedList(new ArrayList<>());
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /** @param port the port to listen on, or 0 for an ephemeral port */
+    public LocalMessageSink(int port) {
+        this.port = port;
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", this::handle);
+        executor = Executors.newFixedThreadPool(8);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /** The endpoint to configure as both the SES and the SNS endpoint of the sending stack. */
+    public String getEndpoint() {
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    /** A copy of the messages received so far, in arrival order. */
+    public List<DeliveredMessage> getMessages() {
+        synchronized (messages) {
+            return new ArrayList<>(messages);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long receivedOn = System.currentTimeMillis();
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            Map<String, String> form = parseForm(read(exchange.getRequestBody()));
+            String action = form.getOrDefault("Action", "");
+            String result = "";
+            if (action.equals("SendEmail") || action.equals("SendRawEmail")) {
+                for (String recipient : emailRecipients(form)) {
+                    messages.add(new DeliveredMessage(Channel.EMAIL, recipient, receivedOn));
+                }
+                result = "<MessageId>" + UUID.randomUUID() + "</MessageId>";
+            } else if (action.equals("Publish") && form.containsKey("PhoneNumber")) {
+                messages.add(new DeliveredMessage(Channel.SMS, form.get("PhoneNumber"), receivedOn));
+                result = "<MessageId>" + UUID.randomUUID() + "</MessageId>";
+            }
+            byte[] response = ("<" + action + "Response><" + action + "Result>" + result + "</" + action
+                    + "Result><ResponseMetadata><RequestId>" + UUID.randomUUID() + "</RequestId></ResponseMetadata></"
+                    + action + "Response>").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/xml");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // SendEmail lists recipients as form fields. SendRawEmail may too, but usually only has them in the To header
+    // of the encoded message.
+    private static List<String> emailRecipients(Map<String, String> form) {
+        List<String> recipients = new ArrayList<>();
+        for (Map.Entry<String, String> entry : form.entrySet()) {
+            if (entry.getKey().startsWith("Destination.ToAddresses.member.")
+                    || entry.getKey().startsWith("Destinations.member.")) {
+                recipients.add(entry.getValue());
+            }
+        }
+        String raw = form.get("RawMessage.Data");
+        if (recipients.isEmpty() && raw != null) {
+            String mime = new String(Base64.getMimeDecoder().decode(raw), StandardCharsets.UTF_8);
+            Matcher header = TO_HEADER.matcher(mime);
+            if (header.find()) {
+                Matcher address = ADDRESS.matcher(header.group(1));
+                while (address.find()) {
+                    recipients.add(address.group());
+                }
+            }
+        }
+        return recipients;
+    }
+
+    public static final class DeliveredMessage {
+        private final Channel channel;
+        private final String recipient;
+        private final long receivedOn;
+
+        DeliveredMessage(Channel channel, String recipient, long receivedOn) {
+            this.channel = channel;
+            this.recipient = recipient;
+            this.receivedOn = receivedOn;
+        }
+        public Channel getChannel() {
+            return channel;
+        }
+        /** The email address or phone number the message was sent to. */
+        public String getRecipient() {
+            return recipient;
+        }
+        /** Arrival time in epoch milliseconds, by the local clock. */
+        public long getReceivedOn() {
+            return receivedOn;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local HTTP server that stands in for the S3 pre-signed URLs returned by Bridge, so transfer scenarios can
+ * run without AWS. PUT to any path records the size of the object (the content is discarded, so multi-gigabyte
+ * objects don't need the memory), and GET of the same path streams back that many bytes of generated content.
+ */
+public class LocalS3StandIn {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Map<String, Long> objectSizes = new ConcurrentHashMap<>();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /** Start listening on an ephemeral port on localhost. */
+    public void start(int threads) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    public String getUrl(String key) {
+        return "http://localhost:" + server.getAddress().getPort() + "/" + key;
+    }
+
+    public Long getObjectSize(String key) {
+        return objectSizes.get(key);
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String key = exchange.getRequestURI().getPath().substring(1);
+        try {
+            if ("PUT".equals(exchange.getRequestMethod())) {
+                long size = 0;
+                byte[] buffer = new byte[BUFFER_SIZE];
+                try (InputStream in = exchange.getRequestBody()) {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        size += read;
+                    }
+                }
+                objectSizes.put(key, size);
+                bytesReceived.addAndGet(size);
+                exchange.sendResponseHeaders(200, -1);
+            } else if ("GET".equals(exchange.getRequestMethod())) {
+                Long size = objectSizes.get(key);
+                if (size == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+                exchange.sendResponseHeaders(200, (size == 0) ? -1 : size);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                try (OutputStream out = exchange.getResponseBody()) {
+                    long remaining = size;
+                    while (remaining > 0) {
+                        int length = (int)Math.min(buffer.length, remaining);
+                        out.write(buffer, 0, length);
+                        remaining -= length;
+                    }
+                }
+                bytesSent.addAndGet(size);
+            } else {
+                exchange.sendResponseHeaders(405, -1);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.sagebionetworks.bridge.sdk.integration.StandInRequests.parseForm;
+import static org.sagebionetworks.bridge.sdk.integration.StandInRequests.read;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local HTTP server that accepts SQS SendMessage calls, so scheduler scenarios can point queue URLs at it and
+ * record exactly when each message arrived. Both the query protocol (form-encoded Action=SendMessage) and the
+ * JSON protocol (X-Amz-Target: AmazonSQS.SendMessage) are answered, with the MD5 of the body that the AWS SDK
+ * checks. Other SQS actions are not supported.
+ */
+public class LocalSqsStandIn {
+
+    private final String host;
+    private final List<ReceivedMessage> messages = Collections.synchronizedList(new ArrayList<>());
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /** @param host the host name to put in queue URLs; it must be reachable from the sender */
+    public LocalSqsStandIn(String host) {
+        this.host = host;
+    }
+
+    /**
+     * Start listening on an ephemeral port, on localhost when that is the host in queue URLs and on all interfaces
+     * otherwise.
+     */
+    public void start() throws IOException {
+        InetSocketAddress address = "localhost".equals(host) ? new InetSocketAddress("localhost", 0)
+                : new InetSocketAddress(0);
+        server = HttpServer.create(address, 0);
+        server.createContext("/", this::handle);
+        executor = Executors.newFixedThreadPool(4);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    public String getQueueUrl(String queueName) {
+        return "http://" + host + ":" + server.getAddress().getPort() + "/queue/" + queueName;
+    }
+
+    /** A copy of the messages received so far, in arrival order. */
+    public List<ReceivedMessage> getMessages() {
+        synchronized (messages) {
+            return new ArrayList<>(messages);
+        }
+    }
+
+    public void clear() {
+        messages.clear();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long receivedOn = System.currentTimeMillis();
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            String payload = read(exchange.getRequestBody());
+            String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+            String body;
+            byte[] response;
+            if (target != null) {
+                // JSON protocol. The message body is kept as sent, still JSON-escaped.
+                body = payload;
+                response = ("{\"MessageId\":\"" + UUID.randomUUID() + "\",\"MD5OfMessageBody\":\""
+                        + md5(jsonField(payload, "MessageBody")) + "\"}").getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/x-amz-json-1.0");
+            } else {
+                body = parseForm(payload).getOrDefault("MessageBody", "");
+                response = ("<SendMessageResponse><SendMessageResult><MessageId>" + UUID.randomUUID()
+                        + "</MessageId><MD5OfMessageBody>" + md5(body) + "</MD5OfMessageBody></SendMessageResult>"
+                        + "<ResponseMetadata><RequestId>" + UUID.randomUUID() + "</RequestId></ResponseMetadata>"
+                        + "</SendMessageResponse>").getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/xml");
+            }
+            messages.add(new ReceivedMessage(exchange.getRequestURI().getPath(), body, receivedOn));
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Good enough for the flat request objects SQS sends; not a general JSON parser
+    private static String jsonField(String payload, String name) {
+        String key = "\"" + name + "\":\"";
+        int start = payload.indexOf(key);
+        if (start < 0) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = start + key.length(); i < payload.length(); i++) {
+            char c = payload.charAt(i);
+            if (c == '\\' && i + 1 < payload.length()) {
+                char next = payload.charAt(++i);
+                sb.append(next == 'n' ? '\n' : next == 't' ? '\t' : next);
+            } else if (c == '"') {
+                break;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String md5(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            return String.format("%032x", new BigInteger(1, digest));
+        } catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static final class ReceivedMessage {
+        private final String path;
+        private final String body;
+        private final long receivedOn;
+
+        ReceivedMessage(String path, String body, long receivedOn) {
+            this.path = path;
+            this.body = body;
+            this.receivedOn = receivedOn;
+        }
+        public String getPath() {
+            return path;
+        }
+        public String getBody() {
+            return body;
+        }
+        /** Arrival time in epoch milliseconds, by the local clock. */
+        public long getReceivedOn() {
+            return receivedOn;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.sagebionetworks.bridge.rest.api.ForAdminsApi;
+import org.sagebionetworks.bridge.rest.api.ForSuperadminsApi;
+import org.sagebionetworks.bridge.rest.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.rest.model.MasterSchedulerConfig;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+/**
+ * Registers a growing number of high-frequency master scheduler configs (cron "0 0/N * * * ?") whose queue URLs
+ * point at a {@link LocalSqsStandIn}, then watches the stand-in for a window after each step. Each schedule's
+ * messages are matched in arrival order to its earliest unmatched scheduled minute, so a fire that arrives after
+ * the next minute has passed still counts against its own minute. For each step it reports how late each message
+ * arrived after its scheduled minute (lag, and jitter as the standard deviation of the lag) for fires within one
+ * interval, fires late by more than the interval as their own category, how many scheduled fires never arrived,
+ * how many arrived more than once, and messages per second.
+ *
+ * The scheduler must be able to reach the stand-in, so this is meant for a locally running Bridge stack; set
+ * -Dperf.scheduler.queueHost to a host name the scheduler can resolve if it is not on this machine. Lag is
+ * measured against the local clock, so the two clocks should be synchronized. Config counts are given with
+ * -Dperf.scheduler.configCounts=10,50,100. Scale with -Dperf.scheduler.intervalMinutes,
+ * -Dperf.scheduler.windowMinutes, -Dperf.scheduler.graceMs (the latest a fire may arrive and still be matched to
+ * its minute; later fires are missed) and -Dperf.scheduler.threads. The test is skipped if no message ever arrives,
+ * and fails if a step misses every fire it expected.
+ */
+@Category(PerformanceTest.class)
+public class MasterSchedulerAccuracyTest {
+    private static final Logger LOG = LoggerFactory.getLogger(MasterSchedulerAccuracyTest.class);
+
+    private static final long MINUTE_MILLIS = 60_000L;
+
+    private final int intervalMinutes = PerfStats.param("scheduler.intervalMinutes", 1);
+    private final int windowMinutes = PerfStats.param("scheduler.windowMinutes", 5);
+    private final int graceMillis = PerfStats.param("scheduler.graceMs", 120000);
+    private final int threads = PerfStats.param("scheduler.threads", 10);
+    private final List<Integer> configCounts = new ArrayList<>();
+
+    private TestUser admin;
+    private LocalSqsStandIn sqs;
+    private String runId;
+    private List<String> scheduleIds = Collections.synchronizedList(new ArrayList<>());
+    private boolean anyArrived;
+
+    @Before
+    public void before() throws Exception {
+        for (String count : System.getProperty("perf.scheduler.configCounts", "10,50,100").split(",")) {
+            configCounts.add(Integer.parseInt(count.trim()));
+        }
+        admin = TestUserHelper.getSignedInAdmin();
+        runId = Tests.randomIdentifier(getClass());
+        sqs = new LocalSqsStandIn(System.getProperty("perf.scheduler.queueHost", "localhost"));
+        sqs.start();
+    }
+
+    @After
+    public void after() throws Exception {
+        ForSuperadminsApi superadminsApi = admin.getClient(ForSuperadminsApi.class);
+        try {
+            for (String scheduleId : scheduleIds) {
+                try {
+                    superadminsApi.deleteSchedulerConfig(scheduleId).execute();
+                } catch(EntityNotFoundException e) {
+                }
+            }
+        } finally {
+            sqs.stop();
+        }
+    }
+
+    @Test
+    public void triggerAccuracyAsConfigsGrow() throws Exception {
+        ForSuperadminsApi superadminsApi = admin.getClient(ForSuperadminsApi.class);
+        PerfStats createStats = new PerfStats("createSchedulerConfig");
+        String cron = "0 0/" + intervalMinutes + " * * * ?";
+
+        for (Integer configCount : configCounts) {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i=scheduleIds.size(); i < configCount; i++) {
+                String scheduleId = runId + "-" + i;
+                MasterSchedulerConfig config = new MasterSchedulerConfig();
+                config.setScheduleId(scheduleId);
+                config.setCronSchedule(cron);
+                config.setRequestTemplate(ImmutableMap.of("scheduleId", scheduleId));
+                config.setSqsQueueUrl(sqs.getQueueUrl(scheduleId));
+                tasks.add(() -> {
+                    createStats.time(() -> superadminsApi.createSchedulerConfig(config).execute());
+                    scheduleIds.add(scheduleId);
+                    return null;
+                });
+            }
+            PerfStats.runConcurrently(threads, tasks);
+
+            sqs.clear();
+            long windowStart = System.currentTimeMillis();
+            Thread.sleep(windowMinutes * MINUTE_MILLIS);
+            long windowEnd = System.currentTimeMillis();
+            measure(windowStart, windowEnd);
+        }
+        createStats.log(LOG);
+        LOG.info("Scheduler status: {}", admin.getClient(ForAdminsApi.class).getSchedulerStatus().execute()
+                .body());
+        assertEquals(0, createStats.getErrors());
+    }
+
+    private void measure(long windowStart, long windowEnd) {
+        String prefix = "/queue/" + runId + "-";
+        Set<String> configIds = new HashSet<>(scheduleIds);
+        long intervalMillis = intervalMinutes * MINUTE_MILLIS;
+        PerfStats lagStats = new PerfStats("Scheduled to received lag, within the interval (" + configIds.size()
+                + " configs)");
+        PerfStats lateStats = new PerfStats("Scheduled to received lag, late by more than the interval ("
+                + configIds.size() + " configs)");
+
+        // Fires can be matched to any scheduled minute within the grace period, including ones before the window
+        // whose fires were still on the way. Only minutes in the window that had time to arrive before it closed
+        // are expected.
+        List<Long> slots = new ArrayList<>();
+        for (long slot = ceilingMinute(windowStart - graceMillis); slot <= windowEnd; slot += MINUTE_MILLIS) {
+            if (isScheduled(slot)) {
+                slots.add(slot);
+            }
+        }
+        Map<String, List<Long>> arrivals = new HashMap<>();
+        int messages = 0;
+        for (LocalSqsStandIn.ReceivedMessage message : sqs.getMessages()) {
+            if (message.getPath().startsWith(prefix)) {
+                messages++;
+                String scheduleId = message.getPath().substring("/queue/".length());
+                arrivals.computeIfAbsent(scheduleId, key -> new ArrayList<>()).add(message.getReceivedOn());
+            }
+        }
+
+        List<Long> lags = new ArrayList<>();
+        int expected = 0;
+        int missed = 0;
+        int duplicates = 0;
+        int unmatched = 0;
+        for (String scheduleId : configIds) {
+            List<Long> receivedOns = arrivals.getOrDefault(scheduleId, new ArrayList<>());
+            Collections.sort(receivedOns);
+            Set<Long> matched = new HashSet<>();
+            for (Long receivedOn : receivedOns) {
+                Long slot = null;
+                boolean inGrace = false;
+                for (Long candidate : slots) {
+                    if (candidate > receivedOn) {
+                        break;
+                    }
+                    if (receivedOn - candidate <= graceMillis) {
+                        inGrace = true;
+                        if (!matched.contains(candidate)) {
+                            slot = candidate;
+                            break;
+                        }
+                    }
+                }
+                if (slot == null) {
+                    if (inGrace) {
+                        duplicates++;
+                    } else {
+                        unmatched++;
+                    }
+                    continue;
+                }
+                matched.add(slot);
+                if (slot >= windowStart) {
+                    long lag = receivedOn - slot;
+                    if (lag > intervalMillis) {
+                        lateStats.record(lag * 1_000_000L);
+                    } else {
+                        lags.add(lag);
+                        lagStats.record(lag * 1_000_000L);
+                    }
+                }
+            }
+            for (Long slot : slots) {
+                if (slot >= windowStart && slot + graceMillis <= windowEnd) {
+                    expected++;
+                    if (!matched.contains(slot)) {
+                        missed++;
+                    }
+                }
+            }
+        }
+        double seconds = (windowEnd - windowStart) / 1000.0;
+        LOG.info(String.format("%d configs every %d min over %.0f s: %d messages (%.2f/s), %d expected fires, %d "
+                + "missed, %d late by more than the interval, %d duplicates, %d not matched to a minute, jitter "
+                + "%.1f ms", configIds.size(), intervalMinutes, seconds, messages, messages / seconds, expected,
+                missed, lateStats.getCount(), duplicates, unmatched, standardDeviation(lags)));
+        lagStats.log(LOG);
+        lateStats.log(LOG);
+        // Nothing ever arriving means the scheduler isn't wired to the stand-in; a step that loses every fire
+        // after earlier steps were received is a failure
+        anyArrived |= messages > 0;
+        assumeTrue("No messages arrived; check that the scheduler can reach " + sqs.getQueueUrl(""), anyArrived);
+        assertTrue("All " + expected + " expected fires were missed", expected == 0 || missed < expected);
+    }
+
+    // Cron minutes are counted within the hour, as "0/N" resets at the top of each hour
+    private boolean isScheduled(long minuteMillis) {
+        return ((minuteMillis / MINUTE_MILLIS) % 60) % intervalMinutes == 0;
+    }
+
+    private static long ceilingMinute(long millis) {
+        long remainder = millis % MINUTE_MILLIS;
+        return (remainder == 0) ? millis : millis + (MINUTE_MILLIS - remainder);
+    }
+
+    private static double standardDeviation(List<Long> values) {
+        if (values.isEmpty()) {
+            return 0;
+        }
+        double mean = values.stream().mapToLong(Long::longValue).average().getAsDouble();
+        double sum = 0;
+        for (Long value : values) {
+            sum += (value - mean) * (value - mean);
+        }
+        return Math.sqrt(sum / values.size());
+    }
+}
@@ -0,0 +1,238 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.sagebionetworks.bridge.util.IntegTestUtils.TEST_APP_ID;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+import org.sagebionetworks.bridge.rest.api.ForAdminsApi;
+import org.sagebionetworks.bridge.rest.api.ForConsentedUsersApi;
+import org.sagebionetworks.bridge.rest.api.NotificationsApi;
+import org.sagebionetworks.bridge.rest.api.ParticipantsApi;
+import org.sagebionetworks.bridge.rest.exceptions.BridgeSDKException;
+import org.sagebionetworks.bridge.rest.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.rest.model.AccountSummary;
+import org.sagebionetworks.bridge.rest.model.AccountSummarySearch;
+import org.sagebionetworks.bridge.rest.model.Criteria;
+import org.sagebionetworks.bridge.rest.model.NotificationMessage;
+import org.sagebionetworks.bridge.rest.model.NotificationProtocol;
+import org.sagebionetworks.bridge.rest.model.NotificationRegistration;
+import org.sagebionetworks.bridge.rest.model.NotificationTopic;
+import org.sagebionetworks.bridge.rest.model.Role;
+import org.sagebionetworks.bridge.rest.model.SignUp;
+import org.sagebionetworks.bridge.rest.model.SubscriptionStatus;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+/**
+ * Registers a large cohort of phones (SMS) and devices (push) that are auto-subscribed to notification topics by
+ * data group criteria. Reports registration latency and getTopicSubscriptions latency, and checks that each
+ * registration is subscribed to every topic of its data group and to none of the other group's topics. The test is
+ * skipped if the test app's push platform rejects every device registration.
+ *
+ * Run with -Dperf.notification.useBridge=true to also send a notification to every topic through Bridge, which
+ * reports the latency of sendNotificationToTopic. SNS fans the message out after Bridge returns, and Bridge does
+ * not report what was delivered, so neither fan-out nor delivery is measured. Phone numbers come from
+ * {@link Tests#fictionalPhone(int)}, which limits a run to twice that many participants. Scale with
+ * -Dperf.notification.users, -Dperf.notification.topics (per data group) and -Dperf.notification.threads.
+ */
+@Category(PerformanceTest.class)
+public class NotificationFanOutTest {
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationFanOutTest.class);
+
+    private static final List<String> GROUPS = ImmutableList.of("sdk-int-1", "sdk-int-2");
+    private static final NotificationMessage MESSAGE = new NotificationMessage().subject("NotificationFanOutTest")
+            .message("This is a notification sent to the whole cohort.");
+
+    private final int userCount = PerfStats.param("notification.users", 20);
+    private final int topicsPerGroup = PerfStats.param("notification.topics", 3);
+    private final int threads = PerfStats.param("notification.threads", 10);
+    private final boolean useBridge = Boolean.getBoolean("perf.notification.useBridge");
+
+    private TestUser developer;
+    private List<TestUser> users = new ArrayList<>();
+    // Every user created, kept as soon as it exists so a failure part way through doesn't leak the rest
+    private final List<TestUser> createdUsers = Collections.synchronizedList(new ArrayList<>());
+    // topic GUID -> the data group whose members are auto-subscribed to it
+    private Map<String, String> topics = Maps.newLinkedHashMap();
+
+    private final PerfStats smsStats = new PerfStats("createNotificationRegistration (SMS)");
+    private final PerfStats pushStats = new PerfStats("createNotificationRegistration (push)");
+    private final PerfStats subscriptionStats = new PerfStats("getTopicSubscriptions");
+
+    @Before
+    public void before() throws Exception {
+        developer = TestUserHelper.createAndSignInUser(NotificationFanOutTest.class, false, Role.DEVELOPER);
+
+        NotificationsApi notificationsApi = developer.getClient(NotificationsApi.class);
+        String runId = Tests.randomIdentifier(getClass());
+        for (String group : GROUPS) {
+            for (int i=0; i < topicsPerGroup; i++) {
+                NotificationTopic topic = new NotificationTopic().name(runId + " " + group + " " + i)
+                        .shortName("fanout-" + i).criteria(new Criteria().addAllOfGroupsItem(group));
+                topics.put(notificationsApi.createNotificationTopic(topic).execute().body().getGuid(), group);
+            }
+        }
+
+        assertTrue("Too many participants for the fictional phone numbers",
+                (userCount + 1) / 2 <= Tests.FICTIONAL_PHONE_COUNT);
+        deleteLeftoverPhoneAccounts();
+        List<Callable<TestUser>> tasks = new ArrayList<>();
+        for (int i=0; i < userCount; i++) {
+            SignUp signUp = new SignUp().dataGroups(ImmutableList.of(groupFor(i)));
+            if (isPhoneUser(i)) {
+                signUp.appId(TEST_APP_ID).consent(true).phone(Tests.fictionalPhone(i / 2));
+            }
+            tasks.add(() -> {
+                TestUser user = new TestUserHelper.Builder(NotificationFanOutTest.class).withConsentUser(true)
+                        .withSignUp(signUp).createAndSignInUser();
+                createdUsers.add(user);
+                return user;
+            });
+        }
+        users = PerfStats.runConcurrently(threads, tasks);
+    }
+
+    @After
+    public void after() throws Exception {
+        try {
+            ForAdminsApi adminsApi = TestUserHelper.getSignedInAdmin().getClient(ForAdminsApi.class);
+            for (String topicGuid : topics.keySet()) {
+                adminsApi.deleteNotificationTopic(topicGuid, true).execute();
+            }
+        } finally {
+            for (TestUser user : createdUsers) {
+                user.signOutAndDeleteUser();
+            }
+            if (developer != null) {
+                developer.signOutAndDeleteUser();
+            }
+        }
+    }
+
+    @Test
+    public void registerSubscribeAndFanOut() throws Exception {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i=0; i < users.size(); i++) {
+            int index = i;
+            tasks.add(() -> registerAndSubscribe(users.get(index), index));
+        }
+        int registered = 0;
+        for (Integer count : PerfStats.runConcurrently(threads, tasks)) {
+            registered += count;
+        }
+
+        LOG.info("{} participants ({} registered) x {} topics", userCount, registered, topics.size());
+        smsStats.log(LOG);
+        pushStats.log(LOG);
+        subscriptionStats.log(LOG);
+        assertEquals(0, smsStats.getErrors());
+        // Every device rejected means the push platform isn't usable here; only some rejected is a failure
+        assumeTrue("The test app rejected every push registration", pushStats.getErrors() == 0
+                || pushStats.getCount() > 0);
+        assertEquals(0, pushStats.getErrors());
+
+        if (useBridge) {
+            // Send to every topic at once, as a study-wide announcement would
+            NotificationsApi notificationsApi = developer.getClient(NotificationsApi.class);
+            PerfStats sendStats = new PerfStats("sendNotificationToTopic");
+            List<Callable<Void>> sends = new ArrayList<>();
+            for (String topicGuid : topics.keySet()) {
+                sends.add(() -> {
+                    sendStats.time(() -> notificationsApi.sendNotificationToTopic(topicGuid, MESSAGE).execute());
+                    return null;
+                });
+            }
+            PerfStats.runConcurrently(threads, sends);
+            sendStats.log(LOG);
+            assertEquals(topics.size(), sendStats.getCount());
+        }
+    }
+
+    // The phone numbers are the same on every run, so accounts left by a run that didn't clean up are removed first
+    private void deleteLeftoverPhoneAccounts() throws Exception {
+        TestUser admin = TestUserHelper.getSignedInAdmin();
+        ParticipantsApi participantsApi = admin.getClient(ParticipantsApi.class);
+        ForAdminsApi adminsApi = admin.getClient(ForAdminsApi.class);
+        for (int i=0; i < userCount; i++) {
+            if (isPhoneUser(i)) {
+                AccountSummarySearch search = new AccountSummarySearch()
+                        .phoneFilter(Tests.fictionalPhone(i / 2).getNumber());
+                for (AccountSummary summary : participantsApi.searchAccountSummaries(search).execute().body()
+                        .getItems()) {
+                    try {
+                        adminsApi.deleteUser(summary.getId()).execute();
+                    } catch(EntityNotFoundException e) {
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns 1 if the participant was registered, and 0 if the push registration was rejected; rejections are
+     * counted as errors of the push stats and checked once every participant has been registered.
+     */
+    private int registerAndSubscribe(TestUser user, int index) throws Exception {
+        ForConsentedUsersApi usersApi = user.getClient(ForConsentedUsersApi.class);
+        String guid;
+        if (isPhoneUser(index)) {
+            NotificationRegistration registration = new NotificationRegistration().protocol(NotificationProtocol.SMS)
+                    .endpoint(user.getSession().getPhone().getNumber());
+            guid = smsStats.time(() -> usersApi.createNotificationRegistration(registration).execute().body()
+                    .getGuid());
+        } else {
+            NotificationRegistration registration = new NotificationRegistration().osName("Android")
+                    .deviceId(Tests.randomIdentifier(getClass()) + "-" + index);
+            try {
+                guid = pushStats.time(() -> usersApi.createNotificationRegistration(registration).execute().body()
+                        .getGuid());
+            } catch(BridgeSDKException e) {
+                LOG.warn("Push registration rejected: {}", e.getMessage());
+                return 0;
+            }
+        }
+
+        // Subscriptions are made on registration, but retry as SmsNotificationRegistrationTest does
+        Set<String> expected = topics.entrySet().stream().filter(entry -> entry.getValue().equals(groupFor(index)))
+                .map(Map.Entry::getKey).collect(Collectors.toSet());
+        List<SubscriptionStatus> statuses = Tests.retryHelper(() -> subscriptionStats.time(() -> usersApi
+                .getTopicSubscriptions(guid).execute().body().getItems()), list -> subscribedTopics(list)
+                .containsAll(expected));
+        Set<String> subscribed = subscribedTopics(statuses);
+        subscribed.retainAll(topics.keySet());
+        assertEquals(expected, subscribed);
+        return 1;
+    }
+
+    private static Set<String> subscribedTopics(List<SubscriptionStatus> statuses) {
+        return statuses.stream().filter(SubscriptionStatus::isSubscribed).map(SubscriptionStatus::getTopicGuid)
+                .collect(Collectors.toSet());
+    }
+
+    private static String groupFor(int index) {
+        return GROUPS.get((index / 2) % GROUPS.size());
+    }
+
+    private static boolean isPhoneUser(int index) {
+        return index % 2 == 0;
+    }
+}
@@ -0,0 +1,286 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static java.lang.String.format;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+import static org.sagebionetworks.bridge.sdk.integration.Tests.escapeJSON;
+import static org.sagebionetworks.bridge.util.IntegTestUtils.CONFIG;
+import static org.sagebionetworks.bridge.util.IntegTestUtils.TEST_APP_ID;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.fluent.Request;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.rest.api.AppsApi;
+import org.sagebionetworks.bridge.rest.api.AuthenticationApi;
+import org.sagebionetworks.bridge.rest.api.ForConsentedUsersApi;
+import org.sagebionetworks.bridge.rest.model.App;
+import org.sagebionetworks.bridge.rest.model.OAuthAuthorizationToken;
+import org.sagebionetworks.bridge.rest.model.OAuthProvider;
+import org.sagebionetworks.bridge.rest.model.SignUp;
+import org.sagebionetworks.bridge.rest.model.UserSessionInfo;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+/**
+ * Runs Synapse-linked sign-ins (Synapse login and consent, then signInWithOauthToken) and OAuth code exchanges
+ * against an app's OAuth provider (requestOAuthAccessToken) concurrently, with a {@link LocalIdentityStandIn}
+ * playing both identity providers. The run is repeated for each simulated provider delay in
+ * -Dperf.oauth.delaysMs=0,100,500. Each Bridge call is split into the time the stand-in spent answering Bridge's
+ * calls for that authorization code and Bridge's own time, so the logs show how much of the login tail comes from
+ * the external provider. The client's own Synapse calls before sign in are reported separately.
+ *
+ * Bridge calls the stand-in only if its Synapse endpoint is the stand-in, so the sign-in half is meant for a locally
+ * running Bridge stack; set -Dperf.oauth.host to a host name the server can resolve if it is not on this machine.
+ * The test is skipped if Bridge never calls the stand-in's Synapse endpoints, and fails if any call fails.
+ * The OAuth provider is registered on the app with the stand-in as its endpoint, so exchanges work against any
+ * server that can reach it. Run with -Dperf.oauth.useSynapse=true to make the client's Synapse calls against the
+ * real Synapse endpoint with the configured test user instead; Bridge's calls to Synapse are then not observable,
+ * so their sign-ins report no external time. Scale with -Dperf.oauth.users, -Dperf.oauth.signIns and
+ * -Dperf.oauth.exchanges (per delay) and -Dperf.oauth.threads.
+ */
+@Category(PerformanceTest.class)
+public class OAuthSignInLatencyTest {
+    private static final Logger LOG = LoggerFactory.getLogger(OAuthSignInLatencyTest.class);
+
+    private static final String SYNAPSE_LOGIN_URL = "auth/v1/login";
+    private static final String SYNAPSE_OAUTH_CONSENT = "auth/v1/oauth2/consent";
+    private static final String CALLBACK_URL = "https://research.sagebridge.org";
+    private static final String VENDOR_ID = "perf-identity-stand-in";
+    private static final String PASSWORD = "not-checked-by-the-stand-in";
+
+    private final int userCount = PerfStats.param("oauth.users", 20);
+    private final int signIns = PerfStats.param("oauth.signIns", 100);
+    private final int exchanges = PerfStats.param("oauth.exchanges", 100);
+    private final int threads = PerfStats.param("oauth.threads", 10);
+    private final boolean useSynapse = Boolean.getBoolean("perf.oauth.useSynapse");
+    private final List<Integer> delaysMillis = new ArrayList<>();
+
+    private TestUser admin;
+    private LocalIdentityStandIn standIn;
+    private List<TestUser> synapseUsers = new ArrayList<>();
+    private List<TestUser> exchangeUsers = new ArrayList<>();
+    private List<String> usernames = new ArrayList<>();
+    private List<String> synapseUserIds = new ArrayList<>();
+
+    @Before
+    public void before() throws Exception {
+        for (String delay : System.getProperty("perf.oauth.delaysMs", "0,100,500").split(",")) {
+            delaysMillis.add(Integer.parseInt(delay.trim()));
+        }
+        admin = TestUserHelper.getSignedInAdmin();
+        standIn = new LocalIdentityStandIn(System.getProperty("perf.oauth.host", "localhost"));
+        standIn.start();
+
+        if (useSynapse) {
+            // The configured Synapse test user is the admin, whose account is already linked
+            usernames.add(CONFIG.get("synapse.test.user"));
+            synapseUserIds.add(CONFIG.get("synapse.test.user.id"));
+        } else {
+            // A Synapse ID links to one account per app, so each run takes its own range of IDs, well above
+            // any Synapse has issued
+            long base = 900_000_000L + new Random().nextInt(90_000_000);
+            for (int i=0; i < userCount; i++) {
+                synapseUserIds.add(Long.toString(base + i));
+                usernames.add("perf-synapse-user-" + (base + i));
+                standIn.addUser(usernames.get(i), synapseUserIds.get(i));
+            }
+            List<Callable<TestUser>> tasks = new ArrayList<>();
+            for (String synapseUserId : synapseUserIds) {
+                tasks.add(() -> TestUserHelper.createAndSignInUser(OAuthSignInLatencyTest.class, true,
+                        new SignUp().synapseUserId(synapseUserId)));
+            }
+            synapseUsers = PerfStats.runConcurrently(threads, tasks);
+        }
+        List<Callable<TestUser>> tasks = new ArrayList<>();
+        for (int i=0; i < userCount; i++) {
+            tasks.add(() -> TestUserHelper.createAndSignInUser(OAuthSignInLatencyTest.class, true));
+        }
+        exchangeUsers = PerfStats.runConcurrently(threads, tasks);
+
+        AppsApi appsApi = admin.getClient(AppsApi.class);
+        App app = appsApi.getUsersApp().execute().body();
+        OAuthProvider provider = new OAuthProvider().clientId("perf-client").secret("secret")
+                .endpoint(standIn.getVendorTokenEndpoint()).callbackUrl(CALLBACK_URL);
+        app.getOAuthProviders().put(VENDOR_ID, provider);
+        appsApi.updateUsersApp(app).execute();
+    }
+
+    @After
+    public void after() throws Exception {
+        try {
+            // Signing in the admin through Synapse replaces the admin's session, so force a new one
+            admin = TestUserHelper.getSignedInAdmin(useSynapse);
+            AppsApi appsApi = admin.getClient(AppsApi.class);
+            App app = appsApi.getUsersApp().execute().body();
+            app.getOAuthProviders().remove(VENDOR_ID);
+            appsApi.updateUsersApp(app).execute();
+        } finally {
+            for (TestUser user : synapseUsers) {
+                user.signOutAndDeleteUser();
+            }
+            for (TestUser user : exchangeUsers) {
+                user.signOutAndDeleteUser();
+            }
+            standIn.stop();
+        }
+    }
+
+    @Test
+    public void signInsAndExchangesByProviderDelay() throws Exception {
+        String synapseEndpoint = useSynapse ? CONFIG.get("synapse.endpoint") : standIn.getSynapseEndpoint();
+        String oauthClientId = useSynapse ? CONFIG.get("synapse.oauth.client.id") : "perf-client";
+        String password = useSynapse ? CONFIG.get("synapse.test.user.password") : PASSWORD;
+        AuthenticationApi authApi = Tests.getUnauthenticatedClientProvider(admin.getClientManager(), TEST_APP_ID)
+                .getClient(AuthenticationApi.class);
+
+        int synapseClientErrors = 0;
+        int signInErrors = 0;
+        int exchangeErrors = 0;
+        for (Integer delay : delaysMillis) {
+            standIn.setDelayMillis(delay);
+            String suffix = " (provider delay " + delay + " ms)";
+            PerfStats synapseClientStats = new PerfStats("Synapse login and consent, client side" + suffix);
+            Breakdown signInBreakdown = new Breakdown("signInWithOauthToken" + suffix);
+            Breakdown exchangeBreakdown = new Breakdown("requestOAuthAccessToken" + suffix);
+
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i=0; i < Math.max(signIns, exchanges); i++) {
+                int index = i;
+                if (i < signIns) {
+                    tasks.add(() -> {
+                        int user = index % usernames.size();
+                        String code;
+                        try {
+                            code = synapseClientStats.time(() -> synapseCode(synapseEndpoint, oauthClientId,
+                                    usernames.get(user), password));
+                        } catch(Exception e) {
+                            return null;
+                        }
+                        OAuthAuthorizationToken token = new OAuthAuthorizationToken().appId(TEST_APP_ID)
+                                .vendorId("synapse").authToken(code).callbackUrl(CALLBACK_URL);
+                        signInBreakdown.time(code, () -> {
+                            UserSessionInfo session = authApi.signInWithOauthToken(token).execute().body();
+                            assertEquals(synapseUserIds.get(user), session.getSynapseUserId());
+                            return session;
+                        });
+                        return null;
+                    });
+                }
+                if (i < exchanges) {
+                    ForConsentedUsersApi usersApi = exchangeUsers.get(index % exchangeUsers.size())
+                            .getClient(ForConsentedUsersApi.class);
+                    String code = UUID.randomUUID().toString();
+                    OAuthAuthorizationToken token = new OAuthAuthorizationToken().authToken(code);
+                    tasks.add(() -> {
+                        exchangeBreakdown.time(code, () -> usersApi.requestOAuthAccessToken(VENDOR_ID, token)
+                                .execute().body());
+                        return null;
+                    });
+                }
+            }
+            // Sign-ins and exchanges are interleaved, so both are in flight at once
+            PerfStats.runConcurrently(threads, tasks);
+
+            synapseClientStats.log(LOG);
+            signInBreakdown.log();
+            exchangeBreakdown.log();
+            synapseClientErrors += synapseClientStats.getErrors();
+            signInErrors += signInBreakdown.total.getErrors();
+            exchangeErrors += exchangeBreakdown.total.getErrors();
+        }
+        LOG.info("Stand-in answered {} server-side calls; {} ms of key set and other calls were not tied to a code",
+                standIn.getServerCalls(), standIn.getUnattributedNanos() / 1_000_000);
+        if (!useSynapse) {
+            assumeTrue("Bridge never called the stand-in; set the server's Synapse endpoint to "
+                    + standIn.getSynapseEndpoint(), standIn.getSynapseServerCalls() > 0);
+        }
+        assertEquals("Synapse login and consent failures", 0, synapseClientErrors);
+        assertEquals("signInWithOauthToken failures", 0, signInErrors);
+        assertEquals("requestOAuthAccessToken failures", 0, exchangeErrors);
+    }
+
+    // Log in to Synapse and consent to Bridge's client, returning the authorization code Bridge exchanges
+    private static String synapseCode(String synapseEndpoint, String oauthClientId, String username,
+            String password) throws Exception {
+        String payload = escapeJSON(format("{'username':'%s','password':'%s'}", username, password));
+        HttpResponse response = Request.Post(synapseEndpoint + SYNAPSE_LOGIN_URL)
+                .setHeader("content-type", "application/json")
+                .body(new StringEntity(payload))
+                .execute().returnResponse();
+        String sessionToken = getValue(response, "sessionToken");
+
+        payload = escapeJSON("{'clientId':'" + oauthClientId + "','scope':'openid',"
+                + "'claims':{'id_token':{'userid':null}},'responseType':'code','redirectUri':'" + CALLBACK_URL + "'}");
+        response = Request.Post(synapseEndpoint + SYNAPSE_OAUTH_CONSENT)
+                .setHeader("content-type", "application/json")
+                .setHeader("sessiontoken", sessionToken)
+                .body(new StringEntity(payload))
+                .execute().returnResponse();
+        return getValue(response, "access_code");
+    }
+
+    private static String getValue(HttpResponse response, String property) throws Exception {
+        String responseBody = EntityUtils.toString(response.getEntity());
+        JsonNode node = new ObjectMapper().readTree(responseBody);
+        return node.get(property).textValue();
+    }
+
+    /** Splits each Bridge call into the stand-in's time for its code and the rest. */
+    private final class Breakdown {
+        private final PerfStats total;
+        private final PerfStats external;
+        private final PerfStats own;
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong externalNanos = new AtomicLong();
+
+        Breakdown(String name) {
+            total = new PerfStats(name);
+            external = new PerfStats(name + ", external calls");
+            own = new PerfStats(name + ", less external calls");
+        }
+
+        // Failures are counted rather than thrown, so a failed call doesn't end the run; the test checks the count
+        void time(String code, Callable<?> call) {
+            long start = System.nanoTime();
+            try {
+                call.call();
+            } catch(Exception e) {
+                total.error();
+                return;
+            }
+            long nanos = System.nanoTime() - start;
+            long externalPart = Math.min(nanos, standIn.getNanosForCode(code));
+            total.record(nanos);
+            external.record(externalPart);
+            own.record(nanos - externalPart);
+            totalNanos.addAndGet(nanos);
+            externalNanos.addAndGet(externalPart);
+        }
+
+        void log() {
+            total.log(LOG);
+            external.log(LOG);
+            own.log(LOG);
+            LOG.info(format("%s: external calls are %.1f%% of the time, p99 %.1f ms of which %.1f ms is Bridge",
+                    total.getName(), (totalNanos.get() == 0) ? 0 : externalNanos.get() * 100.0 / totalNanos.get(),
+                    total.percentileMillis(99), own.percentileMillis(99)));
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.sagebionetworks.bridge.rest.model.Role.DEVELOPER;
+import static org.sagebionetworks.bridge.rest.model.Role.RESEARCHER;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.sagebionetworks.bridge.rest.api.ForAdminsApi;
+import org.sagebionetworks.bridge.rest.api.OrganizationsApi;
+import org.sagebionetworks.bridge.rest.api.ParticipantsApi;
+import org.sagebionetworks.bridge.rest.api.StudiesApi;
+import org.sagebionetworks.bridge.rest.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.rest.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.rest.model.AccountSummarySearch;
+import org.sagebionetworks.bridge.rest.model.Organization;
+import org.sagebionetworks.bridge.rest.model.OrganizationList;
+import org.sagebionetworks.bridge.rest.model.SignUp;
+import org.sagebionetworks.bridge.rest.model.Study;
+import org.sagebionetworks.bridge.rest.model.StudyList;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+/**
+ * Grows a consortium-like graph of organizations sponsoring overlapping studies in rounds. One "probe"
+ * organization has members and sponsors every study; the other organizations each sponsor a few studies. After
+ * each round, measures getOrganizations (all pages), getMembers, getStudies for a researcher scoped to the probe
+ * organization, addStudySponsorship, and the cost of the organization scoping check on an ordinary participant
+ * call (getParticipantById from the org-scoped researcher versus an app-wide admin). Scale with
+ * -Dperf.orgs.rounds, -Dperf.orgs.orgsPerRound, -Dperf.orgs.studiesPerRound, -Dperf.orgs.sponsorships,
+ * -Dperf.orgs.members, -Dperf.orgs.lookups and -Dperf.orgs.threads.
+ */
+@Category(PerformanceTest.class)
+public class OrgStudyGraphScaleTest {
+    private static final Logger LOG = LoggerFactory.getLogger(OrgStudyGraphScaleTest.class);
+
+    private static final int PAGE_SIZE = 50;
+
+    private final int rounds = PerfStats.param("orgs.rounds", 4);
+    private final int orgsPerRound = PerfStats.param("orgs.orgsPerRound", 10);
+    private final int studiesPerRound = PerfStats.param("orgs.studiesPerRound", 10);
+    private final int sponsorshipsPerOrg = PerfStats.param("orgs.sponsorships", 3);
+    private final int memberCount = PerfStats.param("orgs.members", 10);
+    private final int lookups = PerfStats.param("orgs.lookups", 20);
+    private final int threads = PerfStats.param("orgs.threads", 10);
+
+    private String runId;
+    private TestUser admin;
+    private TestUser researcher;
+    private String participantId;
+    private List<TestUser> members = new ArrayList<>();
+    private List<String> orgIds = new ArrayList<>();
+    private List<String> studyIds = new ArrayList<>();
+    // org ID -> sponsored study IDs
+    private Map<String, List<String>> sponsorships = new TreeMap<>();
+
+    @Before
+    public void before() throws Exception {
+        runId = Tests.randomIdentifier(getClass());
+        admin = TestUserHelper.getSignedInAdmin();
+        researcher = TestUserHelper.createAndSignInUser(OrgStudyGraphScaleTest.class, false, RESEARCHER);
+
+        List<Callable<TestUser>> tasks = new ArrayList<>();
+        for (int i=0; i < memberCount; i++) {
+            tasks.add(() -> TestUserHelper.createAndSignInUser(OrgStudyGraphScaleTest.class, false, DEVELOPER));
+        }
+        members = PerfStats.runConcurrently(threads, tasks);
+    }
+
+    @After
+    public void after() throws Exception {
+        ForAdminsApi adminsApi = admin.getClient(ForAdminsApi.class);
+        OrganizationsApi orgsApi = admin.getClient(OrganizationsApi.class);
+        try {
+            if (participantId != null) {
+                adminsApi.deleteUser(participantId).execute();
+            }
+            for (TestUser member : members) {
+                member.signOutAndDeleteUser();
+            }
+            if (researcher != null) {
+                researcher.signOutAndDeleteUser();
+            }
+        } finally {
+            for (Map.Entry<String, List<String>> entry : sponsorships.entrySet()) {
+                for (String studyId : entry.getValue()) {
+                    try {
+                        orgsApi.removeStudySponsorship(entry.getKey(), studyId).execute();
+                    } catch(BadRequestException | EntityNotFoundException e) {
+                    }
+                }
+            }
+            for (String studyId : studyIds) {
+                adminsApi.deleteStudy(studyId, true).execute();
+            }
+            for (String orgId : orgIds) {
+                orgsApi.deleteOrganization(orgId).execute();
+            }
+        }
+    }
+
+    @Test
+    public void growOrganizationGraph() throws Exception {
+        OrganizationsApi orgsApi = admin.getClient(OrganizationsApi.class);
+        PerfStats createOrgStats = new PerfStats("createOrganization");
+        PerfStats createStudyStats = new PerfStats("createStudy");
+        Map<Integer, List<PerfStats>> statsBySponsorships = new TreeMap<>();
+
+        for (int round=0; round < rounds; round++) {
+            List<String> newOrgIds = new ArrayList<>();
+            for (int i=0; i < orgsPerRound; i++) {
+                String orgId = runId + "-org" + orgIds.size();
+                Organization org = new Organization().identifier(orgId).name(orgId);
+                createOrgStats.time(() -> orgsApi.createOrganization(org).execute());
+                orgIds.add(orgId);
+                newOrgIds.add(orgId);
+            }
+            List<String> newStudyIds = new ArrayList<>();
+            for (int i=0; i < studiesPerRound; i++) {
+                String studyId = runId + "-study" + studyIds.size();
+                Study study = new Study().identifier(studyId).name("Study " + studyId);
+                createStudyStats.time(() -> admin.getClient(StudiesApi.class).createStudy(study).execute());
+                studyIds.add(studyId);
+                newStudyIds.add(studyId);
+            }
+            if (round == 0) {
+                setUpProbeOrganization(orgsApi);
+            }
+
+            // The probe org sponsors every study; the other new orgs sponsor a few, overlapping, studies each
+            List<String[]> pairs = new ArrayList<>();
+            for (String studyId : newStudyIds) {
+                pairs.add(new String[] {probeOrgId(), studyId});
+            }
+            for (String orgId : newOrgIds) {
+                if (orgId.equals(probeOrgId())) {
+                    continue;
+                }
+                int offset = orgIds.indexOf(orgId);
+                for (int j=0; j < Math.min(sponsorshipsPerOrg, studyIds.size()); j++) {
+                    pairs.add(new String[] {orgId, studyIds.get((offset + j) % studyIds.size())});
+                }
+            }
+            int total = sponsorshipCount() + pairs.size();
+            PerfStats sponsorStats = new PerfStats("addStudySponsorship (" + total + " sponsorships)");
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (String[] pair : pairs) {
+                tasks.add(() -> {
+                    sponsorStats.time(() -> orgsApi.addStudySponsorship(pair[0], pair[1]).execute());
+                    synchronized(sponsorships) {
+                        sponsorships.computeIfAbsent(pair[0], key -> new ArrayList<>()).add(pair[1]);
+                    }
+                    return null;
+                });
+            }
+            PerfStats.runConcurrently(threads, tasks);
+
+            List<PerfStats> statsList = new ArrayList<>();
+            statsList.add(sponsorStats);
+            statsList.addAll(measure(orgsApi, total));
+            statsBySponsorships.put(total, statsList);
+        }
+
+        LOG.info("{} organizations, {} studies, {} sponsorships, {} members in the probe organization",
+                orgIds.size(), studyIds.size(), sponsorshipCount(), memberCount);
+        createOrgStats.log(LOG);
+        createStudyStats.log(LOG);
+        for (List<PerfStats> statsList : statsBySponsorships.values()) {
+            for (PerfStats stats : statsList) {
+                stats.log(LOG);
+            }
+        }
+    }
+
+    private List<PerfStats> measure(OrganizationsApi orgsApi, int total) throws Exception {
+        String suffix = " (" + orgIds.size() + " orgs, " + total + " sponsorships)";
+        PerfStats orgsStats = new PerfStats("getOrganizations all pages" + suffix);
+        PerfStats membersStats = new PerfStats("getMembers" + suffix);
+        PerfStats studiesStats = new PerfStats("getStudies org-scoped all pages" + suffix);
+        PerfStats scopedStats = new PerfStats("getParticipantById org-scoped" + suffix);
+        PerfStats unscopedStats = new PerfStats("getParticipantById admin" + suffix);
+
+        int orgCount = orgsStats.time(() -> {
+            int offsetBy = 0;
+            int count;
+            do {
+                OrganizationList list = orgsApi.getOrganizations(offsetBy, PAGE_SIZE).execute().body();
+                count = list.getItems().size();
+                offsetBy += count;
+            } while (count == PAGE_SIZE);
+            return offsetBy;
+        });
+        assertTrue(orgCount >= orgIds.size());
+
+        ParticipantsApi scopedApi = researcher.getClient(ParticipantsApi.class);
+        ParticipantsApi adminApi = admin.getClient(ParticipantsApi.class);
+        StudiesApi studiesApi = researcher.getClient(StudiesApi.class);
+        for (int i=0; i < lookups; i++) {
+            membersStats.time(() -> orgsApi.getMembers(probeOrgId(), new AccountSummarySearch()).execute());
+            Set<String> visible = studiesStats.time(() -> {
+                Set<String> identifiers = new HashSet<>();
+                int offsetBy = 0;
+                int count;
+                do {
+                    StudyList list = studiesApi.getStudies(offsetBy, PAGE_SIZE, false).execute().body();
+                    list.getItems().stream().map(Study::getIdentifier).forEach(identifiers::add);
+                    count = list.getItems().size();
+                    offsetBy += count;
+                } while (count == PAGE_SIZE);
+                return identifiers;
+            });
+            if (i == 0) {
+                assertTrue(visible.containsAll(sponsorships.get(probeOrgId())));
+            }
+            scopedStats.time(() -> scopedApi.getParticipantById(participantId, false).execute());
+            unscopedStats.time(() -> adminApi.getParticipantById(participantId, false).execute());
+        }
+        assertEquals(0, scopedStats.getErrors());
+
+        List<PerfStats> statsList = new ArrayList<>();
+        statsList.add(orgsStats);
+        statsList.add(membersStats);
+        statsList.add(studiesStats);
+        statsList.add(scopedStats);
+        statsList.add(unscopedStats);
+        return statsList;
+    }
+
+    // Moves the researcher and members into the probe org, and enrolls a participant in one of its studies
+    private void setUpProbeOrganization(OrganizationsApi orgsApi) throws Exception {
+        orgsApi.addMember(probeOrgId(), researcher.getUserId()).execute();
+        for (TestUser member : members) {
+            orgsApi.addMember(probeOrgId(), member.getUserId()).execute();
+        }
+        researcher.signInAgain();
+
+        SignUp signUp = new SignUp().externalIds(ImmutableMap.of(studyIds.get(0), runId + "-participant"));
+        participantId = admin.getClient(ParticipantsApi.class).createParticipant(signUp).execute().body()
+                .getIdentifier();
+    }
+
+    private String probeOrgId() {
+        return orgIds.get(0);
+    }
+
+    private int sponsorshipCount() {
+        synchronized(sponsorships) {
+            return sponsorships.values().stream().mapToInt(List::size).sum();
+        }
+    }
+}
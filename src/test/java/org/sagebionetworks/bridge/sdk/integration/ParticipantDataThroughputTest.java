@@ -0,0 +1,185 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.sagebionetworks.bridge.rest.model.Role.WORKER;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.sagebionetworks.bridge.rest.api.ForAdminsApi;
+import org.sagebionetworks.bridge.rest.api.ForConsentedUsersApi;
+import org.sagebionetworks.bridge.rest.api.ForWorkersApi;
+import org.sagebionetworks.bridge.rest.model.ForwardCursorStringList;
+import org.sagebionetworks.bridge.rest.model.ParticipantData;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+/**
+ * Writes thousands of participant data identifiers per participant concurrently, half through saveDataForSelf
+ * and half through saveDataForAdminWorker, then pages through the full set with offset keys from both APIs,
+ * reads a sample of items, deletes a sample one at a time and finally deletes the rest in bulk. Reports latency
+ * and items per second for each step. Scale with -Dperf.pdata.users, -Dperf.pdata.identifiers,
+ * -Dperf.pdata.pageSize (5-100), -Dperf.pdata.samples and -Dperf.pdata.threads.
+ */
+@Category(PerformanceTest.class)
+public class ParticipantDataThroughputTest {
+    private static final Logger LOG = LoggerFactory.getLogger(ParticipantDataThroughputTest.class);
+
+    private final int userCount = PerfStats.param("pdata.users", 3);
+    private final int identifierCount = PerfStats.param("pdata.identifiers", 2000);
+    private final int pageSize = PerfStats.param("pdata.pageSize", 100);
+    private final int samples = PerfStats.param("pdata.samples", 100);
+    private final int threads = PerfStats.param("pdata.threads", 10);
+
+    private TestUser admin;
+    private TestUser worker;
+    private List<TestUser> users = new ArrayList<>();
+
+    private final PerfStats selfWriteStats = new PerfStats("saveDataForSelf");
+    private final PerfStats workerWriteStats = new PerfStats("saveDataForAdminWorker");
+    private final PerfStats selfPageStats = new PerfStats("getAllDataForSelf (page)");
+    private final PerfStats workerPageStats = new PerfStats("getAllDataForAdminWorker (page)");
+    private final PerfStats readStats = new PerfStats("getDataByIdentifierForSelf");
+    private final PerfStats deleteStats = new PerfStats("deleteDataByIdentifier");
+    private final PerfStats deleteAllStats = new PerfStats("deleteAllParticipantDataForAdmin");
+
+    @Before
+    public void before() throws Exception {
+        admin = TestUserHelper.getSignedInAdmin();
+        worker = TestUserHelper.createAndSignInUser(ParticipantDataThroughputTest.class, false, WORKER);
+
+        List<Callable<TestUser>> tasks = new ArrayList<>();
+        for (int i=0; i < userCount; i++) {
+            tasks.add(() -> TestUserHelper.createAndSignInUser(ParticipantDataThroughputTest.class, true));
+        }
+        users = PerfStats.runConcurrently(threads, tasks);
+    }
+
+    @After
+    public void after() throws Exception {
+        ForAdminsApi adminsApi = admin.getClient(ForAdminsApi.class);
+        for (TestUser user : users) {
+            adminsApi.deleteAllParticipantDataForAdmin(user.getAppId(), user.getUserId()).execute();
+            user.signOutAndDeleteUser();
+        }
+        if (worker != null) {
+            worker.signOutAndDeleteUser();
+        }
+    }
+
+    @Test
+    public void bulkWritePageReadAndDelete() throws Exception {
+        for (TestUser user : users) {
+            String prefix = Tests.randomIdentifier(getClass()) + "-";
+            ForConsentedUsersApi usersApi = user.getClient(ForConsentedUsersApi.class);
+            ForWorkersApi workersApi = worker.getClient(ForWorkersApi.class);
+
+            // Write
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i=0; i < identifierCount; i++) {
+                String identifier = identifier(prefix, i);
+                ParticipantData data = new ParticipantData();
+                data.setData(ImmutableMap.of("index", String.valueOf(i), "value", identifier));
+                if (i % 2 == 0) {
+                    tasks.add(() -> {
+                        selfWriteStats.time(() -> usersApi.saveDataForSelf(identifier, data).execute());
+                        return null;
+                    });
+                } else {
+                    tasks.add(() -> {
+                        workerWriteStats.time(() -> workersApi.saveDataForAdminWorker(user.getAppId(),
+                                user.getUserId(), identifier, data).execute());
+                        return null;
+                    });
+                }
+            }
+            long start = System.nanoTime();
+            PerfStats.runConcurrently(threads, tasks);
+            PerfStats.logRate(LOG, "Wrote", identifierCount, "items", System.nanoTime() - start);
+
+            // Page through the full set with both APIs
+            start = System.nanoTime();
+            int count = page(offsetKey -> selfPageStats.time(() -> usersApi.getAllDataForSelf(offsetKey, pageSize)
+                    .execute().body()));
+            PerfStats.logRate(LOG, "Paged (self)", count, "items", System.nanoTime() - start);
+            assertEquals(identifierCount, count);
+
+            start = System.nanoTime();
+            count = page(offsetKey -> workerPageStats.time(() -> workersApi.getAllDataForAdminWorker(
+                    user.getAppId(), user.getUserId(), offsetKey, pageSize).execute().body()));
+            PerfStats.logRate(LOG, "Paged (worker)", count, "items", System.nanoTime() - start);
+            assertEquals(identifierCount, count);
+
+            // Per-item reads and deletes of random samples
+            Random random = new Random(identifierCount);
+            List<Callable<Void>> reads = new ArrayList<>();
+            for (int i=0; i < samples; i++) {
+                String identifier = identifier(prefix, random.nextInt(identifierCount));
+                reads.add(() -> {
+                    readStats.time(() -> usersApi.getDataByIdentifierForSelf(identifier).execute());
+                    return null;
+                });
+            }
+            PerfStats.runConcurrently(threads, reads);
+
+            List<Callable<Void>> deletes = new ArrayList<>();
+            for (int i=0; i < Math.min(samples, identifierCount); i++) {
+                String identifier = identifier(prefix, i);
+                deletes.add(() -> {
+                    deleteStats.time(() -> usersApi.deleteDataByIdentifier(identifier).execute());
+                    return null;
+                });
+            }
+            start = System.nanoTime();
+            PerfStats.runConcurrently(threads, deletes);
+            PerfStats.logRate(LOG, "Deleted one at a time", deletes.size(), "items", System.nanoTime() - start);
+
+            start = System.nanoTime();
+            deleteAllStats.time(() -> admin.getClient(ForAdminsApi.class)
+                    .deleteAllParticipantDataForAdmin(user.getAppId(), user.getUserId()).execute());
+            PerfStats.logRate(LOG, "Deleted in bulk", identifierCount - deletes.size(), "items",
+                    System.nanoTime() - start);
+            assertTrue(usersApi.getAllDataForSelf(null, pageSize).execute().body().getItems().isEmpty());
+        }
+
+        LOG.info("{} participants x {} identifiers", userCount, identifierCount);
+        selfWriteStats.log(LOG);
+        workerWriteStats.log(LOG);
+        selfPageStats.log(LOG);
+        workerPageStats.log(LOG);
+        readStats.log(LOG);
+        deleteStats.log(LOG);
+        deleteAllStats.log(LOG);
+        assertEquals(0, selfWriteStats.getErrors() + workerWriteStats.getErrors());
+    }
+
+    /** Follow the offset keys to the end and return the number of identifiers. */
+    private int page(ThrowingFunction<String, ForwardCursorStringList> getPage) throws Exception {
+        int count = 0;
+        String offsetKey = null;
+        do {
+            ForwardCursorStringList list = getPage.apply(offsetKey);
+            count += list.getItems().size();
+            offsetKey = list.getNextPageOffsetKey();
+        } while (offsetKey != null);
+        return count;
+    }
+
+
+    // Zero-padded so the identifiers sort in the order they were written
+    private static String identifier(String prefix, int index) {
+        return prefix + String.format("%06d", index);
+    }
+}
@@ -0,0 +1,163 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+
+/**
+ * Collects latency samples for one operation in a performance scenario and reports count, error count,
+ * throughput and percentiles. Instances are safe to share between the threads of a scenario.
+ */
+public class PerfStats {
+
+    private final String name;
+    private final List<Long> samples = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger errors = new AtomicInteger();
+    private final long createdNanos = System.nanoTime();
+
+    public PerfStats(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Read an integer scale parameter for a scenario, e.g. -Dperf.users=500. Defaults are kept small so the
+     * scenarios can be smoke-run against a local server.
+     */
+    public static int param(String key, int defaultValue) {
+        return Integer.getInteger("perf." + key, defaultValue);
+    }
+
+    /**
+     * Run all the tasks on a fixed pool of threads and return their results in task order. The first task
+     * failure is rethrown after all tasks have finished.
+     */
+    public static <T> List<T> runConcurrently(int threads, List<Callable<T>> tasks) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<T>> futures = executor.invokeAll(tasks);
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch(ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception)e.getCause();
+                    }
+                    throw e;
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, MINUTES);
+        }
+    }
+
+    /** Time one call, recording its latency, or an error if it throws (the exception is rethrown). */
+    public <T> T time(Callable<T> call) throws Exception {
+        long start = System.nanoTime();
+        try {
+            T result = call.call();
+            record(System.nanoTime() - start);
+            return result;
+        } catch(Exception e) {
+            errors.incrementAndGet();
+            throw e;
+        }
+    }
+
+    public void record(long nanos) {
+        samples.add(nanos);
+    }
+
+    public void error() {
+        errors.incrementAndGet();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCount() {
+        return samples.size();
+    }
+
+    public int getErrors() {
+        return errors.get();
+    }
+
+    /** Percentile latency in milliseconds (nearest-rank), where percentile is from 0 to 100. */
+    public double percentileMillis(double percentile) {
+        List<Long> sorted = sortedSamples();
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int rank = (int)Math.ceil((percentile / 100.0) * sorted.size());
+        int index = Math.min(sorted.size()-1, Math.max(0, rank-1));
+        return toMillis(sorted.get(index));
+    }
+
+    public double meanMillis() {
+        List<Long> sorted = sortedSamples();
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        long total = 0;
+        for (Long sample : sorted) {
+            total += sample;
+        }
+        return toMillis(total / sorted.size());
+    }
+
+    public double maxMillis() {
+        List<Long> sorted = sortedSamples();
+        return sorted.isEmpty() ? 0 : toMillis(sorted.get(sorted.size()-1));
+    }
+
+    /** Successful operations per second of wall-clock time since this object was created. */
+    public double perSecond() {
+        long elapsed = System.nanoTime() - createdNanos;
+        return (elapsed == 0) ? 0 : getCount() / (elapsed / 1_000_000_000.0);
+    }
+
+    public void log(Logger logger) {
+        logger.info(toString());
+    }
+
+    /** Log the wall-clock time a batch of items took, and the items per second, e.g. "Wrote 500 items in...". */
+    public static void logRate(Logger logger, String step, int items, String unit, long nanos) {
+        logger.info("{} {} {} in {} ms ({} {}/s)", step, items, unit, nanos / 1_000_000,
+                (nanos == 0) ? 0 : (items * 1_000_000_000L) / nanos, unit);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: n=%d errors=%d mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms rate=%.1f/s",
+                name, getCount(), getErrors(), meanMillis(), percentileMillis(50), percentileMillis(90),
+                percentileMillis(99), maxMillis(), perSecond());
+    }
+
+    private List<Long> sortedSamples() {
+        List<Long> sorted;
+        synchronized(samples) {
+            sorted = new ArrayList<>(samples);
+        }
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private static double toMillis(long nanos) {
+        return NANOSECONDS.toMicros(nanos) / 1000.0;
+    }
+}
@@ -0,0 +1,9 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+/**
+ * Category for load and latency scenarios. These are excluded from the default test run and are
+ * executed with -DjunitCategory=performanceTests. Scale is controlled with -Dperf.* system properties.
+ */
+public interface PerformanceTest {
+
+}
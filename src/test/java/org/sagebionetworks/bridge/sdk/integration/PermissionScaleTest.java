@@ -0,0 +1,176 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.sagebionetworks.bridge.rest.model.AccessLevel.EDIT;
+import static org.sagebionetworks.bridge.rest.model.AccessLevel.LIST;
+import static org.sagebionetworks.bridge.rest.model.AccessLevel.READ;
+import static org.sagebionetworks.bridge.rest.model.EntityType.PARTICIPANTS;
+import static org.sagebionetworks.bridge.rest.model.EntityType.STUDY;
+import static org.sagebionetworks.bridge.rest.model.Role.RESEARCHER;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.rest.api.ForAdminsApi;
+import org.sagebionetworks.bridge.rest.api.PermissionsApi;
+import org.sagebionetworks.bridge.rest.api.StudiesApi;
+import org.sagebionetworks.bridge.rest.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.rest.model.AccessLevel;
+import org.sagebionetworks.bridge.rest.model.EntityType;
+import org.sagebionetworks.bridge.rest.model.Permission;
+import org.sagebionetworks.bridge.rest.model.Study;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+/**
+ * Assigns fine-grained permissions (LIST, READ and EDIT on a study, and LIST on its participants) to many
+ * researchers across many studies, in rounds. After each round, measures getPermissionsForUser and
+ * getPermissionsForEntity as the permissions per user grow. The cost of checking permissions on a request is not
+ * measured: the study endpoints are still authorized by role, so a researcher with no permissions is served the
+ * same as one with many, and no endpoint gates on these grants yet. Scale with -Dperf.permissions.users,
+ * -Dperf.permissions.studies, -Dperf.permissions.rounds, -Dperf.permissions.calls and
+ * -Dperf.permissions.threads.
+ */
+@Category(PerformanceTest.class)
+public class PermissionScaleTest {
+    private static final Logger LOG = LoggerFactory.getLogger(PermissionScaleTest.class);
+
+    private final int userCount = PerfStats.param("permissions.users", 10);
+    private final int studyCount = PerfStats.param("permissions.studies", 20);
+    private final int rounds = PerfStats.param("permissions.rounds", 4);
+    private final int calls = PerfStats.param("permissions.calls", 20);
+    private final int threads = PerfStats.param("permissions.threads", 10);
+
+    private TestUser admin;
+    private List<TestUser> users = new ArrayList<>();
+    private List<String> studyIds = new ArrayList<>();
+    private List<String> permissionGuids = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void before() throws Exception {
+        admin = TestUserHelper.getSignedInAdmin();
+
+        StudiesApi studiesApi = admin.getClient(StudiesApi.class);
+        String runId = Tests.randomIdentifier(getClass());
+        for (int i=0; i < studyCount; i++) {
+            String studyId = runId + "-" + i;
+            studiesApi.createStudy(new Study().identifier(studyId).name("Study " + studyId)).execute();
+            studyIds.add(studyId);
+        }
+        List<Callable<TestUser>> tasks = new ArrayList<>();
+        for (int i=0; i < userCount; i++) {
+            tasks.add(() -> TestUserHelper.createAndSignInUser(PermissionScaleTest.class, false, RESEARCHER));
+        }
+        users = PerfStats.runConcurrently(threads, tasks);
+    }
+
+    @After
+    public void after() throws Exception {
+        PermissionsApi permissionsApi = admin.getClient(PermissionsApi.class);
+        try {
+            for (String guid : permissionGuids) {
+                try {
+                    permissionsApi.deletePermission(guid).execute();
+                } catch(EntityNotFoundException e) {
+                }
+            }
+            for (TestUser user : users) {
+                user.signOutAndDeleteUser();
+            }
+        } finally {
+            ForAdminsApi adminsApi = admin.getClient(ForAdminsApi.class);
+            for (String studyId : studyIds) {
+                adminsApi.deleteStudy(studyId, true).execute();
+            }
+        }
+    }
+
+    @Test
+    public void permissionsPerUserGrow() throws Exception {
+        PermissionsApi permissionsApi = admin.getClient(PermissionsApi.class);
+        PerfStats createStats = new PerfStats("createPermission");
+        Map<Integer, List<PerfStats>> statsByCount = new TreeMap<>();
+        int studiesPerRound = Math.max(1, studyCount / rounds);
+
+        for (int round=0; round < rounds; round++) {
+            List<String> roundStudies = studyIds.subList(Math.min(studyCount, round * studiesPerRound),
+                    (round == rounds-1) ? studyCount : Math.min(studyCount, (round+1) * studiesPerRound));
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (TestUser user : users) {
+                for (String studyId : roundStudies) {
+                    tasks.add(grant(createStats, user, READ, STUDY, studyId));
+                    tasks.add(grant(createStats, user, LIST, STUDY, studyId));
+                    tasks.add(grant(createStats, user, EDIT, STUDY, studyId));
+                    tasks.add(grant(createStats, user, LIST, PARTICIPANTS, studyId));
+                }
+            }
+            PerfStats.runConcurrently(threads, tasks);
+
+            int perUser = permissionGuids.size() / userCount;
+            statsByCount.put(perUser, measure(permissionsApi, perUser));
+        }
+
+        LOG.info("{} researchers x {} studies, {} permissions in total", userCount, studyCount,
+                permissionGuids.size());
+        createStats.log(LOG);
+        for (List<PerfStats> statsList : statsByCount.values()) {
+            for (PerfStats stats : statsList) {
+                stats.log(LOG);
+            }
+        }
+        assertEquals(0, createStats.getErrors());
+    }
+
+    private List<PerfStats> measure(PermissionsApi permissionsApi, int perUser) throws Exception {
+        String suffix = " (" + perUser + " permissions per user)";
+        PerfStats forUserStats = new PerfStats("getPermissionsForUser" + suffix);
+        PerfStats forEntityStats = new PerfStats("getPermissionsForEntity PARTICIPANTS" + suffix);
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (TestUser user : users) {
+            tasks.add(() -> {
+                int count = forUserStats.time(() -> permissionsApi.getPermissionsForUser(user.getUserId())
+                        .execute().body().getItems().size());
+                assertEquals(perUser, count);
+                return null;
+            });
+        }
+        PerfStats.runConcurrently(threads, tasks);
+
+        for (int i=0; i < calls; i++) {
+            String studyId = studyIds.get(i % studyIds.size());
+            forEntityStats.time(() -> permissionsApi.getPermissionsForEntity("PARTICIPANTS", studyId)
+                    .execute());
+        }
+
+        List<PerfStats> statsList = new ArrayList<>();
+        statsList.add(forUserStats);
+        statsList.add(forEntityStats);
+        return statsList;
+    }
+
+    private Callable<Void> grant(PerfStats stats, TestUser user, AccessLevel accessLevel, EntityType entityType,
+            String entityId) {
+        return () -> {
+            Permission permission = new Permission();
+            permission.setUserId(user.getUserId());
+            permission.setAccessLevel(accessLevel);
+            permission.setEntityType(entityType);
+            permission.setEntityId(entityId);
+            permissionGuids.add(stats.time(() -> admin.getClient(PermissionsApi.class).createPermission(permission)
+                    .execute().body().getGuid()));
+            return null;
+        };
+    }
+}
@@ -0,0 +1,244 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.rest.api.ForConsentedUsersApi;
+import org.sagebionetworks.bridge.rest.exceptions.BridgeSDKException;
+import org.sagebionetworks.bridge.rest.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.rest.model.ParticipantFile;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+import okhttp3.ResponseBody;
+
+/**
+ * Maps the effective token bucket behind rate-limited endpoints: participant file downloads of a small and a
+ * larger file (to show whether the bucket counts requests or bytes), and an unthrottled control call. For each
+ * endpoint it measures the burst size from a full bucket, whether exhausting one participant's bucket throttles
+ * another participant (per-user or global scope), the wait until the next request is accepted, the accepted
+ * rate at a sweep of offered request rates, the accepted count at a sweep of concurrent bursts, and the latency
+ * of accepted and throttled (429) responses. Participant file downloads are the only endpoint Bridge throttles
+ * with a 429; the other limits it applies (on resending verification and reset messages) drop the message
+ * silently rather than rejecting the request, so they cannot be mapped from the client.
+ *
+ * Offered rates and concurrency levels are given with -Dperf.ratelimit.rates=1,2,5,10 (requests per second) and
+ * -Dperf.ratelimit.concurrency=1,2,4,8. Scale with -Dperf.ratelimit.maxBurst, -Dperf.ratelimit.largeKb,
+ * -Dperf.ratelimit.windowMs (length of each rate step) and -Dperf.ratelimit.refillMs (wait for a full bucket).
+ */
+@Category(PerformanceTest.class)
+public class RateLimitCharacterizationTest {
+    private static final Logger LOG = LoggerFactory.getLogger(RateLimitCharacterizationTest.class);
+
+    private static final String SMALL_FILE_ID = "rate-limit-small";
+    private static final String LARGE_FILE_ID = "rate-limit-large";
+    private static final int POLL_MILLIS = 50;
+
+    private final int maxBurst = PerfStats.param("ratelimit.maxBurst", 50);
+    private final int largeKb = PerfStats.param("ratelimit.largeKb", 1024);
+    private final int windowMillis = PerfStats.param("ratelimit.windowMs", 10000);
+    private final int refillMillis = PerfStats.param("ratelimit.refillMs", 10000);
+    private final List<Double> rates = new ArrayList<>();
+    private final List<Integer> concurrencyLevels = new ArrayList<>();
+
+    private TestUser user1;
+    private TestUser user2;
+
+    @Before
+    public void before() throws Exception {
+        for (String rate : System.getProperty("perf.ratelimit.rates", "1,2,5,10").split(",")) {
+            rates.add(Double.parseDouble(rate.trim()));
+        }
+        for (String level : System.getProperty("perf.ratelimit.concurrency", "1,2,4,8").split(",")) {
+            concurrencyLevels.add(Integer.parseInt(level.trim()));
+        }
+        user1 = TestUserHelper.createAndSignInUser(RateLimitCharacterizationTest.class, true);
+        user2 = TestUserHelper.createAndSignInUser(RateLimitCharacterizationTest.class, true);
+        for (TestUser user : new TestUser[] { user1, user2 }) {
+            upload(user, SMALL_FILE_ID, 1024);
+            upload(user, LARGE_FILE_ID, largeKb * 1024);
+        }
+    }
+
+    @After
+    public void after() throws Exception {
+        // The downloads drain the buckets; let them refill so the deletes and other tests are not throttled
+        Thread.sleep(refillMillis);
+        for (TestUser user : new TestUser[] { user1, user2 }) {
+            if (user != null) {
+                ForConsentedUsersApi usersApi = user.getClient(ForConsentedUsersApi.class);
+                try {
+                    // A failed upload in before() leaves no file to delete
+                    for (String fileId : new String[] { SMALL_FILE_ID, LARGE_FILE_ID }) {
+                        try {
+                            usersApi.deleteParticipantFile(fileId).execute();
+                        } catch(EntityNotFoundException e) {
+                        }
+                    }
+                } finally {
+                    user.signOutAndDeleteUser();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void characterizeRateLimits() throws Exception {
+        Map<String, ThrowingFunction<TestUser, Object>> probes = new LinkedHashMap<>();
+        probes.put("getParticipantFile (1 KB)", user -> download(user, SMALL_FILE_ID));
+        probes.put("getParticipantFile (" + largeKb + " KB)", user -> download(user, LARGE_FILE_ID));
+        probes.put("getUsersParticipantRecord (control)", user -> user.getClient(ForConsentedUsersApi.class)
+                .getUsersParticipantRecord(false).execute().body());
+
+        Map<String, Integer> bursts = new LinkedHashMap<>();
+        for (Map.Entry<String, ThrowingFunction<TestUser, Object>> entry : probes.entrySet()) {
+            bursts.put(entry.getKey(), characterize(entry.getKey(), entry.getValue()));
+        }
+
+        int smallBurst = bursts.get("getParticipantFile (1 KB)");
+        assertTrue("Participant file downloads should be rate limited", smallBurst < maxBurst);
+        assertTrue("A full bucket should allow at least one download", smallBurst >= 1);
+    }
+
+    /** Run all the measurements for one endpoint, log them, and return the burst size. */
+    private int characterize(String name, ThrowingFunction<TestUser, Object> probe) throws Exception {
+        PerfStats acceptedStats = new PerfStats(name + " accepted");
+        PerfStats throttledStats = new PerfStats(name + " throttled (429)");
+
+        // Burst from a full bucket
+        Thread.sleep(refillMillis);
+        int burst = burst(probe, user1, acceptedStats, throttledStats);
+        if (burst == maxBurst) {
+            LOG.info("{}: not throttled within {} back-to-back requests", name, maxBurst);
+            acceptedStats.log(LOG);
+            return burst;
+        }
+
+        // Scope: user1's bucket is empty, is user2's?
+        boolean perUser = attempt(probe, user2, acceptedStats, throttledStats);
+
+        // Wait until user1 is accepted again
+        long start = System.nanoTime();
+        long deadline = start + refillMillis * 1_000_000L;
+        boolean recovered = false;
+        while (!recovered && System.nanoTime() < deadline) {
+            Thread.sleep(POLL_MILLIS);
+            recovered = attempt(probe, user1, acceptedStats, throttledStats);
+        }
+        long recoveryMillis = (System.nanoTime() - start) / 1_000_000;
+
+        LOG.info("{}: burst of {} requests, {} scope, next request accepted after {}", name, burst,
+                perUser ? "per-user" : "global", recovered ? recoveryMillis + " ms" : "more than " + refillMillis
+                        + " ms");
+
+        // Accepted rate at each offered rate. The bucket starts full, so the burst is subtracted out.
+        for (Double rate : rates) {
+            Thread.sleep(refillMillis);
+            long intervalNanos = (long)(1_000_000_000L / rate);
+            long windowEnd = System.nanoTime() + windowMillis * 1_000_000L;
+            long next = System.nanoTime();
+            int accepted = 0;
+            int offered = 0;
+            while (next < windowEnd) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    Thread.sleep(wait / 1_000_000, (int)(wait % 1_000_000));
+                }
+                offered++;
+                if (attempt(probe, user1, acceptedStats, throttledStats)) {
+                    accepted++;
+                }
+                next += intervalNanos;
+            }
+            double sustained = Math.max(0, accepted - burst) / (windowMillis / 1000.0);
+            LOG.info(String.format("%s: offered %.1f req/s, %d of %d accepted, ~%.2f req/s sustained after the burst",
+                    name, rate, accepted, offered, sustained));
+        }
+
+        // Accepted count when a full bucket is hit by simultaneous requests
+        for (Integer level : concurrencyLevels) {
+            Thread.sleep(refillMillis);
+            List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (int i=0; i < level; i++) {
+                tasks.add(() -> attempt(probe, user1, acceptedStats, throttledStats));
+            }
+            int accepted = 0;
+            for (Boolean result : PerfStats.runConcurrently(level, tasks)) {
+                accepted += result ? 1 : 0;
+            }
+            LOG.info("{}: {} concurrent requests on a full bucket, {} accepted{}", name, level, accepted,
+                    (accepted > burst) ? " (more than the sequential burst)" : "");
+        }
+        acceptedStats.log(LOG);
+        throttledStats.log(LOG);
+        return burst;
+    }
+
+    /** Send back-to-back requests until the first 429 and return how many were accepted. */
+    private int burst(ThrowingFunction<TestUser, Object> probe, TestUser user, PerfStats acceptedStats,
+            PerfStats throttledStats) throws Exception {
+        int accepted = 0;
+        while (accepted < maxBurst && attempt(probe, user, acceptedStats, throttledStats)) {
+            accepted++;
+        }
+        return accepted;
+    }
+
+    /** Make one request, recording its latency as accepted or throttled. Other errors are rethrown. */
+    private static boolean attempt(ThrowingFunction<TestUser, Object> probe, TestUser user,
+            PerfStats acceptedStats, PerfStats throttledStats) throws Exception {
+        long start = System.nanoTime();
+        try {
+            probe.apply(user);
+            acceptedStats.record(System.nanoTime() - start);
+            return true;
+        } catch(BridgeSDKException e) {
+            if (e.getStatusCode() != 429) {
+                throw e;
+            }
+            throttledStats.record(System.nanoTime() - start);
+            return false;
+        }
+    }
+
+    private static Object download(TestUser user, String fileId) throws IOException {
+        ResponseBody body = user.getClient(ForConsentedUsersApi.class).getParticipantFile(fileId).execute().body();
+        body.close();
+        return null;
+    }
+
+    private static void upload(TestUser user, String fileId, int size) throws IOException {
+        ParticipantFile file = new ParticipantFile().mimeType("text/plain");
+        ParticipantFile keys = user.getClient(ForConsentedUsersApi.class).createParticipantFile(fileId, file)
+                .execute().body();
+        HttpURLConnection connection = (HttpURLConnection) new URL(keys.getUploadUrl()).openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestMethod("PUT");
+        connection.setRequestProperty("Content-Type", "text/plain");
+        try (OutputStreamWriter out = new OutputStreamWriter(connection.getOutputStream(),
+                StandardCharsets.US_ASCII)) {
+            out.write(StringUtils.repeat("A", size));
+        }
+        assertEquals(200, connection.getResponseCode());
+        connection.disconnect();
+    }
+}
@@ -0,0 +1,232 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.net.HttpHeaders;
+
+import org.sagebionetworks.bridge.rest.api.ForConsentedUsersApi;
+import org.sagebionetworks.bridge.rest.api.SchedulesV1Api;
+import org.sagebionetworks.bridge.rest.exceptions.BadRequestException;
+import org.sagebionetworks.bridge.rest.model.ABTestGroup;
+import org.sagebionetworks.bridge.rest.model.ABTestScheduleStrategy;
+import org.sagebionetworks.bridge.rest.model.Activity;
+import org.sagebionetworks.bridge.rest.model.ForwardCursorScheduledActivityList;
+import org.sagebionetworks.bridge.rest.model.Role;
+import org.sagebionetworks.bridge.rest.model.Schedule;
+import org.sagebionetworks.bridge.rest.model.SchedulePlan;
+import org.sagebionetworks.bridge.rest.model.ScheduledActivityListV4;
+import org.sagebionetworks.bridge.rest.model.TaskReference;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+import retrofit2.Response;
+
+/**
+ * Generation performance of the v3/v4 scheduled activity APIs that legacy apps still use. Creates many schedule
+ * plans (alternating simple daily plans with many activities, and A/B test plans with -Dperf.v4.groups schedule
+ * groups of those activities), then requests wide date ranges from participants in time zones around the world.
+ * Reports generation latency, the size of the returned payload as given by its Content-Length, and the paging
+ * throughput of the task history. Participants whose date range is rejected skip the v3 and task history calls;
+ * they are counted and logged. Scale with -Dperf.v4.plans, -Dperf.v4.activities, -Dperf.v4.users, -Dperf.v4.days,
+ * -Dperf.v4.pageSize and -Dperf.v4.threads.
+ */
+@Category(PerformanceTest.class)
+public class ScheduledActivityPerformanceTest {
+    private static final Logger LOG = LoggerFactory.getLogger(ScheduledActivityPerformanceTest.class);
+
+    // This is the task used by Tests.getDailyRepeatingSchedulePlan()
+    private static final String TASK_ID = "task:CCC";
+    private static final List<DateTimeZone> ZONES = ImmutableList.of(
+            DateTimeZone.forID("Pacific/Honolulu"), DateTimeZone.forID("America/Los_Angeles"),
+            DateTimeZone.forID("America/New_York"), DateTimeZone.UTC, DateTimeZone.forID("Europe/Berlin"),
+            DateTimeZone.forID("Asia/Kolkata"), DateTimeZone.forID("Asia/Tokyo"),
+            DateTimeZone.forID("Pacific/Auckland"));
+
+    private final int planCount = PerfStats.param("v4.plans", 10);
+    private final int activitiesPerPlan = PerfStats.param("v4.activities", 5);
+    private final int groupsPerPlan = PerfStats.param("v4.groups", 3);
+    private final int userCount = PerfStats.param("v4.users", ZONES.size());
+    private final int days = PerfStats.param("v4.days", 14);
+    private final int pageSize = PerfStats.param("v4.pageSize", 50);
+    private final int threads = PerfStats.param("v4.threads", 4);
+
+    private TestUser developer;
+    private List<TestUser> users = new ArrayList<>();
+    private List<String> schedulePlanGuids = new ArrayList<>();
+    private String runId;
+
+    @Before
+    public void before() throws Exception {
+        developer = TestUserHelper.createAndSignInUser(ScheduledActivityPerformanceTest.class, false, Role.DEVELOPER);
+        runId = Tests.randomIdentifier(getClass());
+
+        SchedulesV1Api schedulePlansApi = developer.getClient(SchedulesV1Api.class);
+        for (int i=0; i < planCount; i++) {
+            SchedulePlan plan = (i % 2 == 0) ? dailyPlanWithManyActivities() : abTestPlanWithManyGroups();
+            plan.setLabel(runId + " plan " + i);
+            schedulePlanGuids.add(schedulePlansApi.createSchedulePlan(plan).execute().body().getGuid());
+        }
+        List<Callable<TestUser>> tasks = new ArrayList<>();
+        for (int i=0; i < userCount; i++) {
+            tasks.add(() -> TestUserHelper.createAndSignInUser(ScheduledActivityPerformanceTest.class, true));
+        }
+        users = PerfStats.runConcurrently(threads, tasks);
+    }
+
+    @After
+    public void after() throws Exception {
+        try {
+            SchedulesV1Api schedulesApi = TestUserHelper.getSignedInAdmin().getClient(SchedulesV1Api.class);
+            for (String guid : schedulePlanGuids) {
+                schedulesApi.deleteSchedulePlan(guid, true).execute();
+            }
+        } finally {
+            for (TestUser user : users) {
+                user.signOutAndDeleteUser();
+            }
+            if (developer != null) {
+                developer.signOutAndDeleteUser();
+            }
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void generateScheduledActivities() throws Exception {
+        PerfStats v4Stats = new PerfStats("getScheduledActivitiesByDateRange (" + days + " days)");
+        PerfStats v3Stats = new PerfStats("getScheduledActivities (4 days ahead)");
+        PerfStats pageStats = new PerfStats("getTaskHistory (page of " + pageSize + ")");
+        LongSummaryStatistics v4Bytes = new LongSummaryStatistics();
+        LongSummaryStatistics v4Items = new LongSummaryStatistics();
+        LongSummaryStatistics historyItems = new LongSummaryStatistics();
+        AtomicInteger unknownSizes = new AtomicInteger();
+        AtomicInteger rejectedRanges = new AtomicInteger();
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i=0; i < users.size(); i++) {
+            TestUser user = users.get(i);
+            DateTimeZone zone = ZONES.get(i % ZONES.size());
+            tasks.add(() -> {
+                ForConsentedUsersApi usersApi = user.getClient(ForConsentedUsersApi.class);
+                DateTime startsOn = DateTime.now(zone).withTimeAtStartOfDay();
+                DateTime endsOn = startsOn.plusDays(days);
+
+                try {
+                    Response<ScheduledActivityListV4> response = v4Stats.time(() -> usersApi
+                            .getScheduledActivitiesByDateRange(startsOn, endsOn).execute());
+                    // Chunked or compressed responses have no usable length; those are counted instead
+                    String contentLength = response.headers().get(HttpHeaders.CONTENT_LENGTH);
+                    synchronized(v4Bytes) {
+                        if (contentLength != null) {
+                            v4Bytes.accept(Long.parseLong(contentLength));
+                        } else {
+                            unknownSizes.incrementAndGet();
+                        }
+                        v4Items.accept(response.body().getItems().size());
+                    }
+                } catch(BadRequestException e) {
+                    rejectedRanges.incrementAndGet();
+                    LOG.warn("{} day range rejected, skipping the v3 and task history calls: {}", days,
+                            e.getMessage());
+                    return null;
+                }
+                String offset = startsOn.toString("ZZ");
+                v3Stats.time(() -> usersApi.getScheduledActivities(offset, 4, null).execute());
+
+                // Page through the task history that was persisted by the v4 request
+                long start = System.nanoTime();
+                int count = 0;
+                String offsetKey = null;
+                do {
+                    String key = offsetKey;
+                    ForwardCursorScheduledActivityList page = pageStats.time(() -> usersApi
+                            .getTaskHistory(TASK_ID, startsOn, endsOn, key, pageSize).execute().body());
+                    count += page.getItems().size();
+                    offsetKey = page.getNextPageOffsetKey();
+                } while (offsetKey != null);
+                long elapsed = System.nanoTime() - start;
+                synchronized(historyItems) {
+                    historyItems.accept(count);
+                }
+                LOG.info("{}: {} task history items in {} ms ({} items/s)", zone.getID(), count, elapsed / 1_000_000,
+                        (elapsed == 0) ? 0 : (count * 1_000_000_000L) / elapsed);
+                return null;
+            });
+        }
+        PerfStats.runConcurrently(threads, tasks);
+
+        LOG.info("{} plans x {} activities ({} groups per A/B plan), {} participants in {} time zones", planCount,
+                activitiesPerPlan, groupsPerPlan, users.size(), Math.min(users.size(), ZONES.size()));
+        LOG.info("V4 payload: mean {} bytes, max {} bytes ({} responses without a Content-Length); mean {} "
+                + "activities", (long)v4Bytes.getAverage(), v4Bytes.getMax(), unknownSizes.get(),
+                (long)v4Items.getAverage());
+        if (rejectedRanges.get() > 0) {
+            LOG.warn("{} of {} participants skipped the v3 and task history calls", rejectedRanges.get(),
+                    users.size());
+        }
+        LOG.info("Task history: {} items total", historyItems.getSum());
+        v4Stats.log(LOG);
+        v3Stats.log(LOG);
+        pageStats.log(LOG);
+
+        assertFalse(v4Stats.getCount() == 0);
+        assertTrue(historyItems.getSum() > 0);
+    }
+
+    private SchedulePlan dailyPlanWithManyActivities() {
+        SchedulePlan plan = Tests.getDailyRepeatingSchedulePlan();
+        Tests.getSimpleSchedule(plan).setActivities(manyActivities());
+        Tests.getSimpleSchedule(plan).setTimes(ImmutableList.of("08:00", "12:00", "16:00", "20:00"));
+        return plan;
+    }
+
+    // Each group is the daily schedule with many activities; the percentages are split as evenly as they can be
+    private SchedulePlan abTestPlanWithManyGroups() {
+        List<ABTestGroup> groups = new ArrayList<>();
+        for (int i=0; i < groupsPerPlan; i++) {
+            Schedule schedule = Tests.getSimpleSchedule(dailyPlanWithManyActivities());
+            ABTestGroup group = new ABTestGroup();
+            group.setPercentage(100 / groupsPerPlan + ((i < 100 % groupsPerPlan) ? 1 : 0));
+            group.setSchedule(schedule);
+            groups.add(group);
+        }
+        ABTestScheduleStrategy strategy = new ABTestScheduleStrategy();
+        strategy.setScheduleGroups(groups);
+        strategy.setType("ABTestScheduleStrategy");
+
+        SchedulePlan plan = new SchedulePlan();
+        plan.setStrategy(strategy);
+        return plan;
+    }
+
+    private List<Activity> manyActivities() {
+        List<Activity> activities = new ArrayList<>();
+        for (int i=0; i < activitiesPerPlan; i++) {
+            TaskReference ref = new TaskReference();
+            ref.setIdentifier(TASK_ID);
+
+            Activity activity = new Activity();
+            activity.setLabel(runId + " activity " + i);
+            activity.setTask(ref);
+            activities.add(activity);
+        }
+        return activities;
+    }
+}
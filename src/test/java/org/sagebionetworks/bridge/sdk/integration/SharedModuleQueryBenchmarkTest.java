@@ -0,0 +1,225 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.sagebionetworks.bridge.rest.model.Role.DEVELOPER;
+import static org.sagebionetworks.bridge.sdk.integration.Tests.API_SIGNIN;
+import static org.sagebionetworks.bridge.sdk.integration.Tests.SHARED_SIGNIN;
+import static org.sagebionetworks.bridge.sdk.integration.UploadSchemaTest.makeSimpleSchema;
+import static org.sagebionetworks.bridge.util.IntegTestUtils.SHARED_APP_ID;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.rest.api.AuthenticationApi;
+import org.sagebionetworks.bridge.rest.api.ForAdminsApi;
+import org.sagebionetworks.bridge.rest.api.ForDevelopersApi;
+import org.sagebionetworks.bridge.rest.api.SurveysApi;
+import org.sagebionetworks.bridge.rest.api.UploadSchemasApi;
+import org.sagebionetworks.bridge.rest.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.rest.model.GuidCreatedOnVersionHolder;
+import org.sagebionetworks.bridge.rest.model.SharedModuleMetadata;
+import org.sagebionetworks.bridge.rest.model.Survey;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+/**
+ * Seeds the shared module library with thousands of module metadata versions in rounds. Modules alternate
+ * between a schema link and a survey link, every version carries one tag from a pool unique to the run, and odd
+ * versions are published. After each round, measures queryAllMetadata for the mostrecent, published, tag and
+ * where-clause (name and notes) combinations, along with queryMetadataById and getMetadataByIdLatestVersion,
+ * logging the number of items each query returned. A selective query whose latency grows with the size of the
+ * library while its result count stays flat is scanning the whole table. Scale with -Dperf.modules.count,
+ * -Dperf.modules.versions (per module), -Dperf.modules.tags (size of the tag pool), -Dperf.modules.rounds,
+ * -Dperf.modules.queries (per combination and round) and -Dperf.modules.threads.
+ */
+@Category(PerformanceTest.class)
+@SuppressWarnings("deprecation")
+public class SharedModuleQueryBenchmarkTest {
+    private static final Logger LOG = LoggerFactory.getLogger(SharedModuleQueryBenchmarkTest.class);
+
+    private static final int SCHEMA_REV = 1;
+
+    private final int moduleCount = PerfStats.param("modules.count", 500);
+    private final int versionCount = PerfStats.param("modules.versions", 6);
+    private final int tagCount = PerfStats.param("modules.tags", 20);
+    private final int rounds = PerfStats.param("modules.rounds", 4);
+    private final int queries = PerfStats.param("modules.queries", 10);
+    private final int threads = PerfStats.param("modules.threads", 10);
+
+    private TestUser admin;
+    private TestUser sharedDeveloper;
+    private AuthenticationApi authApi;
+    private String runId;
+    private String schemaId;
+    private String surveyGuid;
+    private DateTime surveyCreatedOn;
+    private AtomicInteger seededModules = new AtomicInteger();
+
+    @Before
+    public void before() throws Exception {
+        admin = TestUserHelper.getSignedInAdmin();
+        authApi = admin.getClient(AuthenticationApi.class);
+        sharedDeveloper = TestUserHelper.createAndSignInUser(SharedModuleQueryBenchmarkTest.class, SHARED_APP_ID,
+                DEVELOPER);
+        runId = Tests.randomIdentifier(getClass());
+
+        // Modules link to one of these two, so every createMetadata call validates a real link
+        schemaId = runId + "-schema";
+        sharedDeveloper.getClient(UploadSchemasApi.class)
+                .createUploadSchema(makeSimpleSchema(schemaId, (long)SCHEMA_REV, 0L)).execute();
+        Survey survey = new Survey().name(runId + " survey").identifier(runId);
+        GuidCreatedOnVersionHolder keys = sharedDeveloper.getClient(SurveysApi.class).createSurvey(survey)
+                .execute().body();
+        surveyGuid = keys.getGuid();
+        surveyCreatedOn = keys.getCreatedOn();
+    }
+
+    @After
+    public void after() throws Exception {
+        ForAdminsApi adminsApi = admin.getClient(ForAdminsApi.class);
+        authApi.changeApp(SHARED_SIGNIN).execute();
+        try {
+            for (int i=0; i < seededModules.get(); i++) {
+                try {
+                    adminsApi.deleteMetadataByIdAllVersions(moduleId(i), true).execute();
+                } catch (EntityNotFoundException ex) {
+                }
+            }
+            adminsApi.deleteAllRevisionsOfUploadSchema(schemaId, true).execute();
+            admin.getClient(SurveysApi.class).deleteSurvey(surveyGuid, surveyCreatedOn, true).execute();
+        } finally {
+            authApi.changeApp(API_SIGNIN).execute();
+            if (sharedDeveloper != null) {
+                sharedDeveloper.signOutAndDeleteUser();
+            }
+        }
+    }
+
+    @Test
+    public void queriesAsLibraryGrows() throws Exception {
+        ForDevelopersApi modulesApi = sharedDeveloper.getClient(ForDevelopersApi.class);
+        PerfStats createStats = new PerfStats("createMetadata");
+
+        for (int round=1; round <= rounds; round++) {
+            int target = moduleCount * round / rounds;
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i=seededModules.get(); i < target; i++) {
+                int index = i;
+                tasks.add(() -> {
+                    // Versions of a module must be created in order, so each module is seeded by a single task
+                    for (int v=1; v <= versionCount; v++) {
+                        SharedModuleMetadata metadata = metadata(index, v);
+                        createStats.time(() -> modulesApi.createMetadata(metadata).execute());
+                    }
+                    return null;
+                });
+            }
+            PerfStats.runConcurrently(threads, tasks);
+            seededModules.set(target);
+            measure(modulesApi, target);
+        }
+        createStats.log(LOG);
+        assertEquals(0, createStats.getErrors());
+    }
+
+    private void measure(ForDevelopersApi modulesApi, int modules) throws Exception {
+        String suffix = " (" + (modules * versionCount) + " versions of " + modules + " modules)";
+        String tag = tag(0);
+        String otherTag = tag(1);
+        int sample = modules / 2;
+        String name = moduleName(sample);
+
+        // The shared app may hold modules from other runs, so counts for the unfiltered queries are only logged
+        Map<String, ThrowingFunction<Void, Integer>> combinations = new LinkedHashMap<>();
+        combinations.put("queryAllMetadata mostrecent", (n) -> modulesApi
+                .queryAllMetadata(true, false, null, null, null, false).execute().body().getItems().size());
+        combinations.put("queryAllMetadata mostrecent, published", (n) -> modulesApi
+                .queryAllMetadata(true, true, null, null, null, false).execute().body().getItems().size());
+        combinations.put("queryAllMetadata published", (n) -> modulesApi
+                .queryAllMetadata(false, true, null, null, null, false).execute().body().getItems().size());
+        combinations.put("queryAllMetadata tags", (n) -> modulesApi
+                .queryAllMetadata(false, false, null, null, tag, false).execute().body().getItems().size());
+        combinations.put("queryAllMetadata published, tags", (n) -> modulesApi
+                .queryAllMetadata(false, true, null, null, tag, false).execute().body().getItems().size());
+        combinations.put("queryAllMetadata two tags", (n) -> modulesApi
+                .queryAllMetadata(false, false, null, null, tag + "," + otherTag, false).execute().body()
+                .getItems().size());
+        combinations.put("queryAllMetadata name", (n) -> modulesApi
+                .queryAllMetadata(false, false, name, null, null, false).execute().body().getItems().size());
+        combinations.put("queryAllMetadata name, tags", (n) -> modulesApi
+                .queryAllMetadata(false, false, name, null, tag, false).execute().body().getItems().size());
+        combinations.put("queryAllMetadata notes, no match", (n) -> modulesApi
+                .queryAllMetadata(false, false, null, runId + " matches no notes", null, false).execute().body()
+                .getItems().size());
+        combinations.put("queryAllMetadata published, includeDeleted", (n) -> modulesApi
+                .queryAllMetadata(false, true, null, null, null, true).execute().body().getItems().size());
+        combinations.put("queryMetadataById mostrecent", (n) -> modulesApi
+                .queryMetadataById(moduleId(sample), true, false, null, null, null, false).execute().body()
+                .getItems().size());
+        combinations.put("queryMetadataById published", (n) -> modulesApi
+                .queryMetadataById(moduleId(sample), false, true, null, null, null, false).execute().body()
+                .getItems().size());
+        combinations.put("queryMetadataById tags", (n) -> modulesApi
+                .queryMetadataById(moduleId(sample), false, false, null, null, tag(sample), false).execute()
+                .body().getItems().size());
+        combinations.put("getMetadataByIdLatestVersion", (n) -> {
+            modulesApi.getMetadataByIdLatestVersion(moduleId(sample)).execute();
+            return 1;
+        });
+
+        LOG.info("{} modules x {} versions, {} tags in the pool", modules, versionCount, tagCount);
+        for (Map.Entry<String, ThrowingFunction<Void, Integer>> entry : combinations.entrySet()) {
+            PerfStats stats = new PerfStats(entry.getKey() + suffix);
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int i=0; i < queries; i++) {
+                tasks.add(() -> stats.time(() -> entry.getValue().apply(null)));
+            }
+            List<Integer> counts = PerfStats.runConcurrently(threads, tasks);
+            LOG.info("{} returned {} items", entry.getKey(), counts.isEmpty() ? 0 : counts.get(0));
+            stats.log(LOG);
+        }
+
+        // These are fully determined by this run's seed data
+        assertEquals(versionCount, modulesApi.queryAllMetadata(false, false, name, null, null, false).execute()
+                .body().getItems().size());
+        assertEquals(1, modulesApi.queryMetadataById(moduleId(sample), true, false, null, null, null, false)
+                .execute().body().getItems().size());
+    }
+
+    private SharedModuleMetadata metadata(int index, int version) {
+        SharedModuleMetadata metadata = new SharedModuleMetadata().id(moduleId(index)).version(version)
+                .name(moduleName(index)).notes("Version " + version + " of " + moduleId(index))
+                .published(version % 2 == 1).addTagsItem(tag(index));
+        if (index % 2 == 0) {
+            metadata.schemaId(schemaId).schemaRevision(SCHEMA_REV);
+        } else {
+            metadata.surveyGuid(surveyGuid).surveyCreatedOn(surveyCreatedOn.toString());
+        }
+        return metadata;
+    }
+
+    private String moduleId(int index) {
+        return runId + "-module-" + index;
+    }
+
+    // All versions of a module share a name, so a name query selects exactly one module's versions
+    private String moduleName(int index) {
+        return runId + " module " + index + ".";
+    }
+
+    private String tag(int index) {
+        return runId + "-tag-" + (index % tagCount);
+    }
+}
@@ -0,0 +1,378 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.sagebionetworks.bridge.rest.model.SharingScope.NO_SHARING;
+import static org.sagebionetworks.bridge.util.IntegTestUtils.TEST_APP_ID;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.ImmutableList;
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.rest.ApiClientProvider;
+import org.sagebionetworks.bridge.rest.api.AuthenticationApi;
+import org.sagebionetworks.bridge.rest.api.ForAdminsApi;
+import org.sagebionetworks.bridge.rest.api.IntentToParticipateApi;
+import org.sagebionetworks.bridge.rest.api.ParticipantsApi;
+import org.sagebionetworks.bridge.rest.exceptions.BridgeSDKException;
+import org.sagebionetworks.bridge.rest.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.rest.model.AccountSummary;
+import org.sagebionetworks.bridge.rest.model.AccountSummaryList;
+import org.sagebionetworks.bridge.rest.model.AccountSummarySearch;
+import org.sagebionetworks.bridge.rest.model.ConsentSignature;
+import org.sagebionetworks.bridge.rest.model.IntentToParticipate;
+import org.sagebionetworks.bridge.rest.model.Phone;
+import org.sagebionetworks.bridge.rest.model.SignIn;
+import org.sagebionetworks.bridge.rest.model.SignUp;
+import org.sagebionetworks.bridge.rest.model.UserSessionInfo;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+/**
+ * Replays the install burst that follows a press release: arrivals per step of the curve are given with
+ * -Dperf.signup.curve=5,20,60,100,60,20,5 and spread evenly over each step of -Dperf.signup.stepSeconds. Each
+ * arrival submits an intent to participate, signs up, and signs in for the first time, all through an
+ * unauthenticated client as an app would. Reports latency
+ * percentiles for every step of the curve, failures by step and status code (429s and 5xxs show where account
+ * creation starts to break down), and how far behind the scheduled arrival time each one started, which shows
+ * when the simulator itself could not keep up. First sign-ins of email accounts fail while the app requires
+ * email verification; those are counted by status code like any other failure.
+ *
+ * Bridge sends every arrival a verification or intent message, so the test is skipped unless run with
+ * -Dperf.signup.localSink=true, which states that the stack's SES and SNS endpoints point at the
+ * {@link LocalMessageSink} (-Dperf.signup.sinkPort fixes its port). This is meant for a locally running Bridge
+ * stack. Arrivals sign up by email, with addresses under the team's bridge-testing mailbox that the sink receives
+ * in its place, or by phone for -Dperf.signup.phonePercent of them. Phone numbers come from
+ * {@link Tests#fictionalPhone(int)}, which limits a run to {@link Tests#FICTIONAL_PHONE_COUNT} phone arrivals.
+ *
+ * The sink counts verification and intent messages, and reports the backlog of sign-ups still waiting for a
+ * message at the end of each step, and the delay to the first message after each sign-up. The drain after the
+ * curve is limited by -Dperf.signup.drainSeconds, and skipped if no message reached the sink during the curve.
+ * Client concurrency is set with -Dperf.signup.threads.
+ */
+@Category(PerformanceTest.class)
+public class SignUpBurstTest {
+    private static final Logger LOG = LoggerFactory.getLogger(SignUpBurstTest.class);
+
+    private static final ConsentSignature SIGNATURE = new ConsentSignature().name("Test User").scope(NO_SHARING)
+            .birthdate(LocalDate.parse("1980-01-01"));
+
+    private final int stepSeconds = PerfStats.param("signup.stepSeconds", 10);
+    private final int phonePercent = PerfStats.param("signup.phonePercent", 0);
+    private final int drainSeconds = PerfStats.param("signup.drainSeconds", 60);
+    private final int sinkPort = PerfStats.param("signup.sinkPort", 0);
+    private final int threads = PerfStats.param("signup.threads", 50);
+    private final boolean localSink = Boolean.getBoolean("perf.signup.localSink");
+    private final List<Integer> curve = new ArrayList<>();
+
+    private TestUser admin;
+    private LocalMessageSink sink;
+    private String runId;
+    private List<Arrival> arrivals = new ArrayList<>();
+    private Set<String> userIds = ConcurrentHashMap.newKeySet();
+
+    @Before
+    public void before() throws Exception {
+        for (String count : System.getProperty("perf.signup.curve", "5,20,60,100,60,20,5").split(",")) {
+            curve.add(Integer.parseInt(count.trim()));
+        }
+        assumeTrue("Every arrival is mailed or texted; set -Dperf.signup.localSink=true once the stack's SES and SNS "
+                + "endpoints point at the sink", localSink);
+        int phoneArrivals = curve.stream().mapToInt(Integer::intValue).sum() * phonePercent / 100;
+        assertTrue("Too many phone arrivals for the fictional phone numbers",
+                phoneArrivals <= Tests.FICTIONAL_PHONE_COUNT);
+        admin = TestUserHelper.getSignedInAdmin();
+        runId = Tests.randomIdentifier(getClass());
+        sink = new LocalMessageSink(sinkPort);
+        sink.start();
+    }
+
+    @After
+    public void after() throws Exception {
+        try {
+            if (admin != null) {
+                deleteAccounts();
+            }
+        } finally {
+            if (sink != null) {
+                sink.stop();
+            }
+        }
+    }
+
+    @Test
+    public void pressReleaseBurst() throws Exception {
+        ApiClientProvider provider = Tests.getUnauthenticatedClientProvider(admin.getClientManager(), TEST_APP_ID);
+        IntentToParticipateApi intentApi = provider.getClient(IntentToParticipateApi.class);
+        AuthenticationApi authApi = provider.getClient(AuthenticationApi.class);
+
+        Map<Integer, PerfStats> intentStats = new TreeMap<>();
+        Map<Integer, PerfStats> signUpStats = new TreeMap<>();
+        Map<Integer, PerfStats> signInStats = new TreeMap<>();
+        Map<Integer, Map<String, AtomicInteger>> failuresByStep = new TreeMap<>();
+        PerfStats startLagStats = new PerfStats("Arrival start behind schedule");
+        for (int step=0; step < curve.size(); step++) {
+            String suffix = " (step " + step + ", " + curve.get(step) + " arrivals)";
+            intentStats.put(step, new PerfStats("submitIntentToParticipate" + suffix));
+            signUpStats.put(step, new PerfStats("signUp" + suffix));
+            signInStats.put(step, new PerfStats("signInV4, first sign in" + suffix));
+            failuresByStep.put(step, new ConcurrentHashMap<>());
+        }
+
+        long stepMillis = stepSeconds * 1000L;
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(threads);
+        List<Future<Void>> futures = new ArrayList<>();
+        long curveStart = System.currentTimeMillis();
+        int phoneArrivals = 0;
+        try {
+            for (int step=0; step < curve.size(); step++) {
+                int count = curve.get(step);
+                for (int k=0; k < count; k++) {
+                    // Spreads phone arrivals evenly through the curve
+                    int index = arrivals.size();
+                    boolean byPhone = (index + 1) * phonePercent / 100 > index * phonePercent / 100;
+                    Arrival arrival = new Arrival(step, index, byPhone ? phoneArrivals++ : -1);
+                    arrivals.add(arrival);
+                    long offset = step * stepMillis + (k * stepMillis) / count;
+                    Map<String, AtomicInteger> failures = failuresByStep.get(step);
+                    Callable<Void> task = () -> {
+                        startLagStats.record((System.currentTimeMillis() - curveStart - offset) * 1_000_000L);
+                        arrive(arrival, intentApi, authApi, intentStats.get(arrival.step),
+                                signUpStats.get(arrival.step), signInStats.get(arrival.step), failures);
+                        return null;
+                    };
+                    futures.add(executor.schedule(task, offset, MILLISECONDS));
+                }
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        long curveEnd = System.currentTimeMillis();
+        PerfStats.logRate(LOG, "Ran", arrivals.size(), "arrivals", (curveEnd - curveStart) * 1_000_000L);
+
+        for (int step=0; step < curve.size(); step++) {
+            intentStats.get(step).log(LOG);
+            signUpStats.get(step).log(LOG);
+            signInStats.get(step).log(LOG);
+            int attempts = signUpStats.get(step).getCount() + signUpStats.get(step).getErrors();
+            LOG.info(String.format("Step %d: %d arrivals, account creation error rate %.1f%%, failures %s", step,
+                    curve.get(step), (attempts == 0) ? 0 : signUpStats.get(step).getErrors() * 100.0 / attempts,
+                    new TreeMap<>(failuresByStep.get(step))));
+        }
+        startLagStats.log(LOG);
+
+        measureBacklog(curveStart, stepMillis);
+
+        int signedUp = 0;
+        for (PerfStats stats : signUpStats.values()) {
+            signedUp += stats.getCount();
+        }
+        assertTrue("No sign-up succeeded", signedUp > 0);
+    }
+
+    private void arrive(Arrival arrival, IntentToParticipateApi intentApi, AuthenticationApi authApi,
+            PerfStats intentStats, PerfStats signUpStats, PerfStats signInStats, Map<String, AtomicInteger> failures) {
+        IntentToParticipate intent = new IntentToParticipate().appId(TEST_APP_ID).subpopGuid(TEST_APP_ID)
+                .osName("iPhone").consentSignature(SIGNATURE);
+        SignUp signUp = new SignUp().appId(TEST_APP_ID).password(Tests.PASSWORD)
+                .dataGroups(ImmutableList.of("test_user"));
+        SignIn signIn = new SignIn().appId(TEST_APP_ID).password(Tests.PASSWORD);
+        if (arrival.phone != null) {
+            intent.phone(arrival.phone);
+            signUp.phone(arrival.phone);
+            signIn.phone(arrival.phone);
+        } else {
+            intent.email(arrival.email);
+            signUp.email(arrival.email);
+            signIn.email(arrival.email);
+        }
+        if (!timeOrCountFailure(intentStats, "submitIntentToParticipate", failures,
+                () -> intentApi.submitIntentToParticipate(intent).execute())) {
+            return;
+        }
+        arrival.signUpStartedOn = System.currentTimeMillis();
+        if (!timeOrCountFailure(signUpStats, "signUp", failures, () -> authApi.signUp(signUp).execute())) {
+            return;
+        }
+        arrival.signedUp = true;
+        timeOrCountFailure(signInStats, "signInV4", failures, () -> {
+            UserSessionInfo session = authApi.signInV4(signIn).execute().body();
+            userIds.add(session.getId());
+            return session;
+        });
+    }
+
+    // Times the call and counts a failure by status code, so one failed step doesn't stop the scenario
+    private static boolean timeOrCountFailure(PerfStats stats, String operation, Map<String, AtomicInteger> failures,
+            Callable<?> call) {
+        try {
+            stats.time(call);
+            return true;
+        } catch(Exception e) {
+            String status = (e instanceof BridgeSDKException) ?
+                    Integer.toString(((BridgeSDKException)e).getStatusCode()) : e.getClass().getSimpleName();
+            failures.computeIfAbsent(operation + " " + status, key -> new AtomicInteger()).incrementAndGet();
+            return false;
+        }
+    }
+
+    private void measureBacklog(long curveStart, long stepMillis) throws InterruptedException {
+        // Nothing during the whole curve means nothing will arrive while draining either
+        if (sink.getMessages().isEmpty()) {
+            LOG.warn("No messages arrived; point the stack's SES and SNS endpoints at {} to measure the backlog",
+                    sink.getEndpoint());
+            return;
+        }
+        // Wait for every sign-up to be followed by a message, or for the drain limit
+        long deadline = System.currentTimeMillis() + drainSeconds * 1000L;
+        Map<String, Long> deliveredOn = deliveries();
+        while (deliveredOn.size() < signedUpCount() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1000);
+            deliveredOn = deliveries();
+        }
+
+        PerfStats deliveryStats = new PerfStats("signUp to first message at the sink");
+        for (Arrival arrival : arrivals) {
+            Long delivered = deliveredOn.get(arrival.identifier());
+            if (arrival.signedUp && delivered != null) {
+                deliveryStats.record((delivered - arrival.signUpStartedOn) * 1_000_000L);
+            } else if (arrival.signedUp) {
+                deliveryStats.error();
+            }
+        }
+        for (int step=0; step <= curve.size(); step++) {
+            long at = curveStart + (step + 1) * stepMillis;
+            int backlog = 0;
+            for (Arrival arrival : arrivals) {
+                Long delivered = deliveredOn.get(arrival.identifier());
+                if (arrival.signedUp && arrival.signUpStartedOn <= at && (delivered == null || delivered > at)) {
+                    backlog++;
+                }
+            }
+            LOG.info("Message backlog at end of {}: {} sign-ups waiting",
+                    (step < curve.size()) ? "step " + step : "one step after the curve", backlog);
+        }
+        LOG.info("{} messages at the sink, {} of {} sign-ups never received one", sink.getMessages().size(),
+                deliveryStats.getErrors(), signedUpCount());
+        deliveryStats.log(LOG);
+    }
+
+    // The first message for each recipient that arrived after its sign-up was requested
+    private Map<String, Long> deliveries() {
+        Map<String, Long> signUpStartedOn = new HashMap<>();
+        for (Arrival arrival : arrivals) {
+            if (arrival.signedUp) {
+                signUpStartedOn.put(arrival.identifier(), arrival.signUpStartedOn);
+            }
+        }
+        Map<String, Long> deliveredOn = new HashMap<>();
+        for (LocalMessageSink.DeliveredMessage message : sink.getMessages()) {
+            Long startedOn = signUpStartedOn.get(message.getRecipient());
+            if (startedOn != null && message.getReceivedOn() >= startedOn) {
+                deliveredOn.putIfAbsent(message.getRecipient(), message.getReceivedOn());
+            }
+        }
+        return deliveredOn;
+    }
+
+    private int signedUpCount() {
+        int count = 0;
+        for (Arrival arrival : arrivals) {
+            if (arrival.signedUp) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Accounts whose first sign in failed are found by their email or phone number. The phone numbers are the same
+    // on every run, so all of them are searched in case an earlier run left an account behind.
+    private void deleteAccounts() throws Exception {
+        ParticipantsApi participantsApi = admin.getClient(ParticipantsApi.class);
+        List<AccountSummarySearch> searches = new ArrayList<>();
+        searches.add(new AccountSummarySearch().emailFilter("bridge-testing+" + runId));
+        for (Arrival arrival : arrivals) {
+            if (arrival.phone != null) {
+                searches.add(new AccountSummarySearch().phoneFilter(arrival.phone.getNumber()));
+            }
+        }
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (AccountSummarySearch search : searches) {
+            tasks.add(() -> {
+                int offset = 0;
+                AccountSummaryList list;
+                do {
+                    list = participantsApi.searchAccountSummaries(search.offsetBy(offset).pageSize(100)).execute()
+                            .body();
+                    for (AccountSummary summary : list.getItems()) {
+                        userIds.add(summary.getId());
+                    }
+                    offset += list.getItems().size();
+                } while (!list.getItems().isEmpty() && offset < list.getTotal());
+                return null;
+            });
+        }
+        PerfStats.runConcurrently(10, tasks);
+
+        ForAdminsApi adminsApi = admin.getClient(ForAdminsApi.class);
+        tasks = new ArrayList<>();
+        for (String userId : new HashSet<>(userIds)) {
+            tasks.add(() -> {
+                try {
+                    adminsApi.deleteUser(userId).execute();
+                } catch(EntityNotFoundException e) {
+                }
+                return null;
+            });
+        }
+        PerfStats.runConcurrently(10, tasks);
+    }
+
+
+    private final class Arrival {
+        private final int step;
+        private final String email;
+        private final Phone phone;
+        private volatile long signUpStartedOn;
+        private volatile boolean signedUp;
+
+        // A phone index of -1 makes an arrival by email
+        Arrival(int step, int index, int phoneIndex) {
+            this.step = step;
+            if (phoneIndex >= 0) {
+                this.email = null;
+                this.phone = Tests.fictionalPhone(phoneIndex);
+            } else {
+                this.email = "bridge-testing+" + runId + "-" + index + "@sagebase.org";
+                this.phone = null;
+            }
+        }
+
+        String identifier() {
+            return (phone != null) ? phone.getNumber() : email;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Request body handling shared by the local HTTP stand-ins for AWS and identity provider endpoints. */
+public class StandInRequests {
+
+    /** Read the whole body as UTF-8. */
+    public static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /** Decode a form-encoded body (as sent by the AWS query protocol and OAuth token requests), in field order. */
+    public static Map<String, String> parseForm(String payload) throws IOException {
+        Map<String, String> form = new LinkedHashMap<>();
+        for (String pair : payload.split("&")) {
+            int index = pair.indexOf('=');
+            if (index > 0) {
+                form.put(URLDecoder.decode(pair.substring(0, index), "UTF-8"),
+                        URLDecoder.decode(pair.substring(index + 1), "UTF-8"));
+            }
+        }
+        return form;
+    }
+}
@@ -0,0 +1,212 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.joda.time.DateTimeZone.UTC;
+import static org.junit.Assert.assertEquals;
+import static org.sagebionetworks.bridge.rest.model.ActivityEventUpdateType.MUTABLE;
+import static org.sagebionetworks.bridge.rest.model.PerformanceOrder.SEQUENTIAL;
+import static org.sagebionetworks.bridge.rest.model.Role.STUDY_DESIGNER;
+import static org.sagebionetworks.bridge.sdk.integration.Tests.STUDY_ID_1;
+import static org.sagebionetworks.bridge.util.IntegTestUtils.SAGE_ID;
+import static org.sagebionetworks.bridge.util.IntegTestUtils.TEST_APP_ID;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.rest.api.ForConsentedUsersApi;
+import org.sagebionetworks.bridge.rest.api.ForStudyDesignersApi;
+import org.sagebionetworks.bridge.rest.api.SchedulesV2Api;
+import org.sagebionetworks.bridge.rest.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.rest.model.Assessment;
+import org.sagebionetworks.bridge.rest.model.AssessmentReference2;
+import org.sagebionetworks.bridge.rest.model.Label;
+import org.sagebionetworks.bridge.rest.model.Schedule2;
+import org.sagebionetworks.bridge.rest.model.Session;
+import org.sagebionetworks.bridge.rest.model.StudyActivityEvent;
+import org.sagebionetworks.bridge.rest.model.StudyActivityEventList;
+import org.sagebionetworks.bridge.rest.model.StudyActivityEventRequest;
+import org.sagebionetworks.bridge.rest.model.StudyBurst;
+import org.sagebionetworks.bridge.rest.model.TimeWindow;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+/**
+ * Mass-updates the origin event of a schedule with several long-running study bursts across a cohort, and
+ * measures the cost of generating the burst events and of recalculating the timeline and adherence that
+ * depend on them. Scale with -Dperf.burst.users, -Dperf.burst.bursts, -Dperf.burst.occurrences and
+ * -Dperf.burst.threads.
+ */
+@Category(PerformanceTest.class)
+public class StudyBurstScaleTest {
+    private static final Logger LOG = LoggerFactory.getLogger(StudyBurstScaleTest.class);
+
+    // Established in the initializer for study 1.
+    private static final String MUTABLE_EVENT = "custom:event1";
+
+    private final int userCount = PerfStats.param("burst.users", 20);
+    private final int burstCount = PerfStats.param("burst.bursts", 4);
+    private final int occurrences = PerfStats.param("burst.occurrences", 6);
+    private final int threads = PerfStats.param("burst.threads", 8);
+
+    private TestUser studyDesigner;
+    private Schedule2 schedule;
+    private Assessment assessment;
+    private List<TestUser> cohort = new ArrayList<>();
+
+    @Before
+    public void before() throws Exception {
+        studyDesigner = TestUserHelper.createAndSignInUser(StudyBurstScaleTest.class, false, STUDY_DESIGNER);
+
+        assessment = new Assessment().title(StudyBurstScaleTest.class.getSimpleName()).osName("Universal")
+                .ownerId(SAGE_ID).identifier(Tests.randomIdentifier(getClass()));
+        assessment = studyDesigner.getClient(ForStudyDesignersApi.class).createAssessment(assessment).execute().body();
+
+        try {
+            TestUser admin = TestUserHelper.getSignedInAdmin();
+            Schedule2 existing = admin.getClient(SchedulesV2Api.class).getScheduleForStudy(STUDY_ID_1).execute().body();
+            admin.getClient(SchedulesV2Api.class).deleteSchedule(existing.getGuid()).execute();
+        } catch(EntityNotFoundException e) {
+        }
+        schedule = studyDesigner.getClient(SchedulesV2Api.class)
+                .saveScheduleForStudy(STUDY_ID_1, createSchedule()).execute().body();
+
+        List<Callable<TestUser>> tasks = new ArrayList<>();
+        for (int i=0; i < userCount; i++) {
+            tasks.add(() -> TestUserHelper.createAndSignInUser(StudyBurstScaleTest.class, true));
+        }
+        cohort = PerfStats.runConcurrently(threads, tasks);
+    }
+
+    @After
+    public void after() throws Exception {
+        TestUser admin = TestUserHelper.getSignedInAdmin();
+        for (TestUser user : cohort) {
+            user.signOutAndDeleteUser();
+        }
+        if (schedule != null && schedule.getGuid() != null) {
+            admin.getClient(SchedulesV2Api.class).deleteSchedule(schedule.getGuid()).execute();
+        }
+        if (assessment != null && assessment.getGuid() != null) {
+            admin.getClient(ForStudyDesignersApi.class).deleteAssessment(assessment.getGuid(), true).execute();
+        }
+        if (studyDesigner != null) {
+            studyDesigner.signOutAndDeleteUser();
+        }
+    }
+
+    @Test
+    public void massUpdateOriginEvents() throws Exception {
+        PerfStats createStats = new PerfStats("createStudyActivityEvent (origin created)");
+        PerfStats updateStats = new PerfStats("createStudyActivityEvent (origin moved)");
+        PerfStats eventsStats = new PerfStats("getStudyActivityEvents");
+        PerfStats timelineStats = new PerfStats("getTimelineForSelf");
+        PerfStats adherenceStats = new PerfStats("getUsersStudyParticipantEventStreamAdherenceReport");
+
+        DateTime timestamp1 = DateTime.now(UTC);
+        int burstEvents = forCohort(user -> {
+            createStats.time(() -> createOrUpdateEvent(user, timestamp1));
+            return countBurstEvents(user, eventsStats);
+        });
+        assertEquals(userCount * burstCount * occurrences, burstEvents);
+
+        // Move every origin event; this regenerates all the burst events
+        DateTime timestamp2 = timestamp1.plusDays(3);
+        burstEvents = forCohort(user -> {
+            updateStats.time(() -> createOrUpdateEvent(user, timestamp2));
+            ForConsentedUsersApi usersApi = user.getClient(ForConsentedUsersApi.class);
+            timelineStats.time(() -> usersApi.getTimelineForSelf(STUDY_ID_1, null).execute());
+            adherenceStats.time(() -> usersApi.getUsersStudyParticipantEventStreamAdherenceReport(
+                    STUDY_ID_1, DateTime.now(), null).execute());
+            return countBurstEvents(user, eventsStats);
+        });
+        assertEquals(userCount * burstCount * occurrences, burstEvents);
+
+        LOG.info("{} participants, {} bursts x {} occurrences: {} burst events written per pass",
+                userCount, burstCount, occurrences, burstEvents);
+        createStats.log(LOG);
+        updateStats.log(LOG);
+        eventsStats.log(LOG);
+        timelineStats.log(LOG);
+        adherenceStats.log(LOG);
+    }
+
+    private int forCohort(ThrowingFunction<TestUser, Integer> function) throws Exception {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (TestUser user : cohort) {
+            tasks.add(() -> function.apply(user));
+        }
+        int total = 0;
+        for (Integer count : PerfStats.runConcurrently(threads, tasks)) {
+            total += count;
+        }
+        return total;
+    }
+
+    private Object createOrUpdateEvent(TestUser user, DateTime timestamp) throws Exception {
+        StudyActivityEventRequest request = new StudyActivityEventRequest()
+                .clientTimeZone("America/Los_Angeles").eventId(MUTABLE_EVENT).timestamp(timestamp);
+        return user.getClient(ForConsentedUsersApi.class)
+                .createStudyActivityEvent(STUDY_ID_1, request, true, null).execute();
+    }
+
+    private int countBurstEvents(TestUser user, PerfStats eventsStats) throws Exception {
+        StudyActivityEventList list = eventsStats.time(() -> user.getClient(ForConsentedUsersApi.class)
+                .getStudyActivityEvents(STUDY_ID_1).execute().body());
+        int count = 0;
+        for (StudyActivityEvent event : list.getItems()) {
+            if (event.getStudyBurstId() != null && MUTABLE_EVENT.equals(event.getOriginEventId())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Schedule2 createSchedule() {
+        Schedule2 schedule = new Schedule2();
+        schedule.setName("Test Schedule [StudyBurstScaleTest]");
+        // Each burst starts 8 weeks after the previous one and runs weekly
+        schedule.setDuration("P" + (burstCount * 8 + occurrences + 1) + "W");
+
+        Session session = new Session();
+        session.setName("Burst assessment");
+        session.addLabelsItem(new Label().lang("en").value("Take the assessment"));
+        session.addStartEventIdsItem("timeline_retrieved");
+        session.setPerformanceOrder(SEQUENTIAL);
+
+        List<StudyBurst> bursts = new ArrayList<>();
+        for (int i=0; i < burstCount; i++) {
+            String burstId = "burst" + (i+1);
+            StudyBurst burst = new StudyBurst()
+                    .identifier(burstId)
+                    .originEventId(MUTABLE_EVENT)
+                    .delay("P" + (i * 8 + 1) + "W")
+                    .interval("P1W")
+                    .occurrences(occurrences)
+                    .updateType(MUTABLE);
+            bursts.add(burst);
+            session.addStudyBurstIdsItem(burstId);
+        }
+        schedule.setStudyBursts(bursts);
+
+        AssessmentReference2 ref = new AssessmentReference2()
+                .guid(assessment.getGuid())
+                .appId(TEST_APP_ID)
+                .revision(5)
+                .addLabelsItem(new Label().lang("en").value("Test Value"))
+                .minutesToComplete(10)
+                .title("A title")
+                .identifier(assessment.getIdentifier());
+        session.addAssessmentsItem(ref);
+        session.addTimeWindowsItem(new TimeWindow().startTime("08:00").expiration("PT3H"));
+        schedule.addSessionsItem(session);
+        return schedule;
+    }
+}
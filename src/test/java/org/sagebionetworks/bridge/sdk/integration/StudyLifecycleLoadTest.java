@@ -0,0 +1,247 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.sagebionetworks.bridge.rest.model.Role.STUDY_COORDINATOR;
+import static org.sagebionetworks.bridge.rest.model.Role.STUDY_DESIGNER;
+import static org.sagebionetworks.bridge.rest.model.StudyPhase.ANALYSIS;
+import static org.sagebionetworks.bridge.rest.model.StudyPhase.COMPLETED;
+import static org.sagebionetworks.bridge.rest.model.StudyPhase.DESIGN;
+import static org.sagebionetworks.bridge.rest.model.StudyPhase.IN_FLIGHT;
+import static org.sagebionetworks.bridge.rest.model.StudyPhase.RECRUITMENT;
+import static org.sagebionetworks.bridge.rest.model.StudyPhase.WITHDRAWN;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.rest.api.SchedulesV2Api;
+import org.sagebionetworks.bridge.rest.api.StudiesApi;
+import org.sagebionetworks.bridge.rest.exceptions.BridgeSDKException;
+import org.sagebionetworks.bridge.rest.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.rest.model.Enrollment;
+import org.sagebionetworks.bridge.rest.model.Schedule2;
+import org.sagebionetworks.bridge.rest.model.Study;
+import org.sagebionetworks.bridge.rest.model.StudyPhase;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+/**
+ * Grows the number of studies in the app in rounds, as consortium portals do. Each round creates studies
+ * concurrently and moves each one through the lifecycle to a target phase; the targets cycle through every phase
+ * (design, recruitment, in-flight, analysis, completed, and withdrawn from design), so the app always holds
+ * studies in all of them. Reports the latency of each transition, and after each round the cost of the
+ * phase-dependent validation on schedules (saveScheduleForStudy, accepted in design and rejected afterwards) and
+ * on enrollment (enrollParticipant), by phase and outcome, along with paging through getStudies. Scale with
+ * -Dperf.lifecycle.studies (in total), -Dperf.lifecycle.rounds, -Dperf.lifecycle.samples (per phase and round)
+ * and -Dperf.lifecycle.threads.
+ */
+@Category(PerformanceTest.class)
+public class StudyLifecycleLoadTest {
+    private static final Logger LOG = LoggerFactory.getLogger(StudyLifecycleLoadTest.class);
+
+    private static final int PAGE_SIZE = 100;
+    // The order in which a study reaches each phase, and the phases targeted in turn by new studies
+    private static final List<StudyPhase> PATH = ImmutableList.of(RECRUITMENT, IN_FLIGHT, ANALYSIS, COMPLETED);
+    private static final List<StudyPhase> TARGETS = ImmutableList.of(DESIGN, RECRUITMENT, IN_FLIGHT, ANALYSIS,
+            COMPLETED, WITHDRAWN);
+
+    private final int studyCount = PerfStats.param("lifecycle.studies", 1000);
+    private final int rounds = PerfStats.param("lifecycle.rounds", 4);
+    private final int samples = PerfStats.param("lifecycle.samples", 10);
+    private final int threads = PerfStats.param("lifecycle.threads", 10);
+
+    private TestUser studyDesigner;
+    private TestUser studyCoordinator;
+    private String runId;
+    private List<String> studyIds = Collections.synchronizedList(new ArrayList<>());
+    private List<String> scheduleGuids = Collections.synchronizedList(new ArrayList<>());
+    private List<TestUser> participants = new ArrayList<>();
+    private Map<StudyPhase, List<String>> studyIdsByPhase = new EnumMap<>(StudyPhase.class);
+
+    @Before
+    public void before() throws Exception {
+        studyDesigner = TestUserHelper.createAndSignInUser(StudyLifecycleLoadTest.class, false, STUDY_DESIGNER);
+        studyCoordinator = TestUserHelper.createAndSignInUser(StudyLifecycleLoadTest.class, false,
+                STUDY_COORDINATOR);
+        runId = Tests.randomIdentifier(getClass());
+        for (StudyPhase phase : TARGETS) {
+            studyIdsByPhase.put(phase, Collections.synchronizedList(new ArrayList<>()));
+        }
+    }
+
+    @After
+    public void after() throws Exception {
+        TestUser admin = TestUserHelper.getSignedInAdmin();
+        try {
+            // Participants go first, taking their enrollments with them
+            for (TestUser participant : participants) {
+                participant.signOutAndDeleteUser();
+            }
+            SchedulesV2Api schedulesApi = admin.getClient(SchedulesV2Api.class);
+            for (String guid : scheduleGuids) {
+                schedulesApi.deleteSchedule(guid).execute();
+            }
+            StudiesApi studiesApi = admin.getClient(StudiesApi.class);
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (String studyId : studyIds) {
+                tasks.add(() -> {
+                    try {
+                        studiesApi.deleteStudy(studyId, true).execute();
+                    } catch(EntityNotFoundException e) {
+                    }
+                    return null;
+                });
+            }
+            PerfStats.runConcurrently(threads, tasks);
+        } finally {
+            if (studyDesigner != null) {
+                studyDesigner.signOutAndDeleteUser();
+            }
+            if (studyCoordinator != null) {
+                studyCoordinator.signOutAndDeleteUser();
+            }
+        }
+    }
+
+    @Test
+    public void transitionsAndValidationAsStudiesGrow() throws Exception {
+        StudiesApi coordinatorApi = studyCoordinator.getClient(StudiesApi.class);
+        Map<StudyPhase, ThrowingFunction<String, Study>> transitions = new EnumMap<>(StudyPhase.class);
+        transitions.put(RECRUITMENT, (id) -> coordinatorApi.transitionStudyToRecruitment(id).execute().body());
+        transitions.put(IN_FLIGHT, (id) -> coordinatorApi.transitionStudyToInFlight(id).execute().body());
+        transitions.put(ANALYSIS, (id) -> coordinatorApi.transitionStudyToAnalysis(id).execute().body());
+        transitions.put(COMPLETED, (id) -> coordinatorApi.transitionStudyToCompleted(id).execute().body());
+        transitions.put(WITHDRAWN, (id) -> coordinatorApi.transitionStudyToWithdrawn(id).execute().body());
+
+        PerfStats createStats = new PerfStats("createStudy");
+        Map<StudyPhase, PerfStats> transitionStats = new EnumMap<>(StudyPhase.class);
+        for (StudyPhase phase : transitions.keySet()) {
+            transitionStats.put(phase, new PerfStats("transitionStudyTo" + phase));
+        }
+
+        for (int round=1; round <= rounds; round++) {
+            int target = studyCount * round / rounds;
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i=studyIds.size(); i < target; i++) {
+                String studyId = runId + "-" + i;
+                StudyPhase targetPhase = TARGETS.get(i % TARGETS.size());
+                studyIds.add(studyId);
+                tasks.add(() -> {
+                    Study study = new Study().identifier(studyId).name("StudyLifecycleLoadTest " + studyId);
+                    createStats.time(() -> coordinatorApi.createStudy(study).execute());
+                    // Withdrawn studies are withdrawn from design; the rest follow the path as far as their target
+                    List<StudyPhase> steps = (targetPhase == WITHDRAWN) ? ImmutableList.of(WITHDRAWN) :
+                            PATH.subList(0, PATH.indexOf(targetPhase) + 1);
+                    for (StudyPhase phase : steps) {
+                        Study result = transitionStats.get(phase).time(() -> transitions.get(phase).apply(studyId));
+                        assertEquals(phase, result.getPhase());
+                    }
+                    studyIdsByPhase.get(targetPhase).add(studyId);
+                    return null;
+                });
+            }
+            long start = System.nanoTime();
+            PerfStats.runConcurrently(threads, tasks);
+            PerfStats.logRate(LOG, "Created and transitioned", tasks.size(), "studies", System.nanoTime() - start);
+
+            measureValidation(round);
+        }
+        createStats.log(LOG);
+        for (PerfStats stats : transitionStats.values()) {
+            stats.log(LOG);
+        }
+        int transitionErrors = 0;
+        for (PerfStats stats : transitionStats.values()) {
+            transitionErrors += stats.getErrors();
+        }
+        assertEquals(0, createStats.getErrors() + transitionErrors);
+    }
+
+    private void measureValidation(int round) throws Exception {
+        String suffix = " (" + studyIds.size() + " studies)";
+        SchedulesV2Api schedulesApi = studyDesigner.getClient(SchedulesV2Api.class);
+        StudiesApi coordinatorApi = studyCoordinator.getClient(StudiesApi.class);
+        Map<String, PerfStats> scheduleStats = new ConcurrentHashMap<>();
+        Map<String, PerfStats> enrollStats = new ConcurrentHashMap<>();
+
+        // A new participant each round, so the enrollment cost isn't skewed by one account's growing list
+        TestUser participant = TestUserHelper.createAndSignInUser(StudyLifecycleLoadTest.class, true);
+        participants.add(participant);
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (StudyPhase phase : TARGETS) {
+            List<String> ids = studyIdsByPhase.get(phase);
+            // The most recently created studies of each phase, which have no schedule yet in design
+            List<String> sample;
+            synchronized (ids) {
+                sample = new ArrayList<>(ids.subList(Math.max(0, ids.size() - samples), ids.size()));
+            }
+            for (String studyId : sample) {
+                tasks.add(() -> {
+                    Schedule2 schedule = new Schedule2();
+                    schedule.setName("Test Schedule [StudyLifecycleLoadTest]");
+                    schedule.setDuration("P10W");
+                    Schedule2 saved = timeByOutcome(scheduleStats, "saveScheduleForStudy, " + phase,
+                            () -> schedulesApi.saveScheduleForStudy(studyId, schedule).execute().body());
+                    if (saved != null) {
+                        scheduleGuids.add(saved.getGuid());
+                    }
+                    Enrollment enrollment = new Enrollment().userId(participant.getUserId());
+                    timeByOutcome(enrollStats, "enrollParticipant, " + phase,
+                            () -> coordinatorApi.enrollParticipant(studyId, enrollment).execute().body());
+                    return null;
+                });
+            }
+        }
+        PerfStats.runConcurrently(threads, tasks);
+
+        PerfStats pageStats = new PerfStats("getStudies (page of " + PAGE_SIZE + ")" + suffix);
+        int offset = 0;
+        int count;
+        do {
+            int offsetBy = offset;
+            count = pageStats.time(() -> coordinatorApi.getStudies(offsetBy, PAGE_SIZE, false).execute().body()
+                    .getItems().size());
+            offset += count;
+        } while (count == PAGE_SIZE);
+
+        LOG.info("Round {}: {} studies, {} visible to the coordinator", round, studyIds.size(), offset);
+        pageStats.log(LOG);
+        for (PerfStats stats : new TreeMap<>(scheduleStats).values()) {
+            stats.log(LOG);
+        }
+        for (PerfStats stats : new TreeMap<>(enrollStats).values()) {
+            stats.log(LOG);
+        }
+    }
+
+    // Validation failures are an expected outcome here, so latency is kept separately for each outcome
+    private <T> T timeByOutcome(Map<String, PerfStats> statsByOutcome, String operation, Callable<T> call) {
+        long start = System.nanoTime();
+        String outcome;
+        T result = null;
+        try {
+            result = call.call();
+            outcome = "accepted";
+        } catch(BridgeSDKException e) {
+            outcome = "rejected " + e.getStatusCode();
+        } catch(Exception e) {
+            outcome = e.getClass().getSimpleName();
+        }
+        statsByOutcome.computeIfAbsent(operation + " " + outcome, PerfStats::new).record(System.nanoTime() - start);
+        return result;
+    }
+}
@@ -0,0 +1,274 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.sagebionetworks.bridge.rest.model.MimeType.TEXT_PLAIN;
+import static org.sagebionetworks.bridge.rest.model.Role.DEVELOPER;
+import static org.sagebionetworks.bridge.rest.model.TemplateType.EMAIL_RESET_PASSWORD;
+import static org.sagebionetworks.bridge.rest.model.TemplateType.SMS_RESET_PASSWORD;
+import static org.sagebionetworks.bridge.util.IntegTestUtils.TEST_APP_ID;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.rest.api.AuthenticationApi;
+import org.sagebionetworks.bridge.rest.api.ForAdminsApi;
+import org.sagebionetworks.bridge.rest.api.ForDevelopersApi;
+import org.sagebionetworks.bridge.rest.api.ParticipantsApi;
+import org.sagebionetworks.bridge.rest.exceptions.EntityNotFoundException;
+import org.sagebionetworks.bridge.rest.model.AccountSummary;
+import org.sagebionetworks.bridge.rest.model.AccountSummarySearch;
+import org.sagebionetworks.bridge.rest.model.Criteria;
+import org.sagebionetworks.bridge.rest.model.Phone;
+import org.sagebionetworks.bridge.rest.model.SignUp;
+import org.sagebionetworks.bridge.rest.model.Template;
+import org.sagebionetworks.bridge.rest.model.TemplateList;
+import org.sagebionetworks.bridge.rest.model.TemplateRevision;
+import org.sagebionetworks.bridge.rest.model.TemplateType;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+/**
+ * Grows the number of reset password templates (email and SMS) and the length of their revision histories in
+ * rounds. The templates have criteria no participant matches, so every send has to consider all of them before
+ * falling back to the app's default. After each round, measures paging through getTemplates and
+ * getTemplateRevisions.
+ *
+ * With -Dperf.templates.localSink=true, which states that the stack's SES and SNS endpoints point at a
+ * {@link LocalMessageSink} (-Dperf.templates.sinkPort fixes its port), it also measures templated sends through
+ * requestResetPassword: the latency of the request for email and SMS, and the delay until each message arrives at
+ * the sink. A send that doesn't arrive within -Dperf.templates.timeoutMs fails the test. The SMS participant's
+ * number comes from {@link Tests#fictionalPhone(int)}. Without the sink nothing is sent, so no one is mailed or
+ * texted. Scale with -Dperf.templates.count (per type), -Dperf.templates.revisions (per template),
+ * -Dperf.templates.rounds, -Dperf.templates.pageSize, -Dperf.templates.sends (per type per round) and
+ * -Dperf.templates.threads.
+ */
+@Category(PerformanceTest.class)
+public class TemplateRevisionBenchmarkTest {
+    private static final Logger LOG = LoggerFactory.getLogger(TemplateRevisionBenchmarkTest.class);
+
+    private static final String NON_MATCHING_GROUP = "sdk-int-1";
+    private static final TemplateType[] TYPES = { EMAIL_RESET_PASSWORD, SMS_RESET_PASSWORD };
+    // The last of the fictional numbers, as the other tests count up from the first
+    private static final Phone PHONE = Tests.fictionalPhone(Tests.FICTIONAL_PHONE_COUNT - 1);
+
+    private final int templateCount = PerfStats.param("templates.count", 50);
+    private final int revisionCount = PerfStats.param("templates.revisions", 20);
+    private final int rounds = PerfStats.param("templates.rounds", 4);
+    private final int pageSize = PerfStats.param("templates.pageSize", 50);
+    private final int sends = PerfStats.param("templates.sends", 5);
+    private final int timeoutMillis = PerfStats.param("templates.timeoutMs", 30000);
+    private final int sinkPort = PerfStats.param("templates.sinkPort", 0);
+    private final int threads = PerfStats.param("templates.threads", 10);
+    private final boolean localSink = Boolean.getBoolean("perf.templates.localSink");
+
+    private TestUser admin;
+    private TestUser developer;
+    private TestUser emailUser;
+    private TestUser phoneUser;
+    private LocalMessageSink sink;
+    private String runId;
+    private Map<TemplateType, List<String>> templateGuids = new TreeMap<>();
+    private Map<String, Integer> revisionsByGuid = Collections.synchronizedMap(new TreeMap<>());
+
+    @Before
+    public void before() throws Exception {
+        admin = TestUserHelper.getSignedInAdmin();
+        developer = TestUserHelper.createAndSignInUser(TemplateRevisionBenchmarkTest.class, false, DEVELOPER);
+        if (localSink) {
+            sink = new LocalMessageSink(sinkPort);
+            sink.start();
+            emailUser = TestUserHelper.createAndSignInUser(TemplateRevisionBenchmarkTest.class, true);
+            deleteLeftoverPhoneAccounts();
+            phoneUser = new TestUserHelper.Builder(TemplateRevisionBenchmarkTest.class).withConsentUser(true)
+                    .withSignUp(new SignUp().appId(TEST_APP_ID).consent(true).phone(PHONE)).createUser();
+        }
+
+        runId = Tests.randomIdentifier(getClass());
+        for (TemplateType type : TYPES) {
+            templateGuids.put(type, Collections.synchronizedList(new ArrayList<>()));
+        }
+    }
+
+    @After
+    public void after() throws Exception {
+        ForAdminsApi adminsApi = admin.getClient(ForAdminsApi.class);
+        try {
+            for (List<String> guids : templateGuids.values()) {
+                for (String guid : guids) {
+                    try {
+                        adminsApi.deleteTemplate(guid, true).execute();
+                    } catch(EntityNotFoundException e) {
+                    }
+                }
+            }
+        } finally {
+            for (TestUser user : new TestUser[] { developer, emailUser, phoneUser }) {
+                if (user != null) {
+                    user.signOutAndDeleteUser();
+                }
+            }
+            if (sink != null) {
+                sink.stop();
+            }
+        }
+    }
+
+    @Test
+    public void revisionsAndTemplatesGrow() throws Exception {
+        ForDevelopersApi devsApi = developer.getClient(ForDevelopersApi.class);
+        PerfStats createStats = new PerfStats("createTemplate");
+        PerfStats revisionStats = new PerfStats("createTemplateRevision");
+        PerfStats publishStats = new PerfStats("publishTemplateRevision");
+
+        for (int round=1; round <= rounds; round++) {
+            int templateTarget = templateCount * round / rounds;
+            int revisionTarget = revisionCount * round / rounds;
+
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (TemplateType type : TYPES) {
+                for (int i=templateGuids.get(type).size(); i < templateTarget; i++) {
+                    Template template = new Template();
+                    template.setName(runId + " " + type + " " + i);
+                    template.setTemplateType(type);
+                    Criteria criteria = new Criteria();
+                    criteria.addAllOfGroupsItem(NON_MATCHING_GROUP);
+                    template.setCriteria(criteria);
+                    tasks.add(() -> {
+                        String guid = createStats.time(() -> devsApi.createTemplate(template).execute().body()
+                                .getGuid());
+                        templateGuids.get(type).add(guid);
+                        // A new template starts with one default revision
+                        revisionsByGuid.put(guid, 1);
+                        return null;
+                    });
+                }
+            }
+            PerfStats.runConcurrently(threads, tasks);
+
+            // Revisions are keyed by creation time, so each template's revisions are created one at a time
+            tasks = new ArrayList<>();
+            for (String guid : new ArrayList<>(revisionsByGuid.keySet())) {
+                tasks.add(() -> {
+                    DateTime createdOn = null;
+                    for (int r=revisionsByGuid.get(guid); r < revisionTarget; r++) {
+                        TemplateRevision revision = new TemplateRevision();
+                        revision.setSubject("Revision " + r);
+                        revision.setDocumentContent("Revision " + r + " ${resetPasswordUrl}");
+                        revision.setMimeType(TEXT_PLAIN);
+                        createdOn = revisionStats.time(() -> devsApi.createTemplateRevision(guid, revision)
+                                .execute().body().getCreatedOn());
+                        revisionsByGuid.put(guid, r + 1);
+                    }
+                    if (createdOn != null) {
+                        DateTime published = createdOn;
+                        publishStats.time(() -> devsApi.publishTemplateRevision(guid, published).execute());
+                    }
+                    return null;
+                });
+            }
+            PerfStats.runConcurrently(threads, tasks);
+
+            measure(devsApi, templateTarget, Math.max(1, revisionTarget));
+        }
+        createStats.log(LOG);
+        revisionStats.log(LOG);
+        publishStats.log(LOG);
+        assertEquals(0, createStats.getErrors() + revisionStats.getErrors());
+    }
+
+    private void measure(ForDevelopersApi devsApi, int templates, int revisions) throws Exception {
+        String suffix = " (" + templates + " templates per type x " + revisions + " revisions)";
+        PerfStats listStats = new PerfStats("getTemplates (page of " + pageSize + ")" + suffix);
+        PerfStats revisionListStats = new PerfStats("getTemplateRevisions (page of " + pageSize + ")" + suffix);
+
+        for (TemplateType type : TYPES) {
+            int offset = 0;
+            int count;
+            do {
+                int offsetBy = offset;
+                TemplateList list = listStats.time(() -> devsApi.getTemplates(type.name(), offsetBy, pageSize, false)
+                        .execute().body());
+                count = list.getItems().size();
+                offset += count;
+            } while (count == pageSize);
+
+            for (String guid : templateGuids.get(type).subList(0, Math.min(5, templateGuids.get(type).size()))) {
+                offset = 0;
+                do {
+                    int offsetBy = offset;
+                    count = revisionListStats.time(() -> devsApi.getTemplateRevisions(guid, offsetBy, pageSize)
+                            .execute().body().getItems().size());
+                    offset += count;
+                } while (count == pageSize);
+            }
+        }
+
+        listStats.log(LOG);
+        revisionListStats.log(LOG);
+        if (localSink) {
+            measureSends("email" + suffix, emailUser, emailUser.getEmail());
+            measureSends("SMS" + suffix, phoneUser, PHONE.getNumber());
+        }
+    }
+
+    private void measureSends(String label, TestUser user, String recipient) throws Exception {
+        PerfStats sendStats = new PerfStats("requestResetPassword, " + label);
+        PerfStats deliveredStats = new PerfStats("requestResetPassword to the sink, " + label);
+
+        AuthenticationApi authApi = user.getClient(AuthenticationApi.class);
+        for (int i=0; i < sends; i++) {
+            long startedOn = System.currentTimeMillis();
+            sendStats.time(() -> authApi.requestResetPassword(user.getSignIn()).execute());
+            Long deliveredOn = null;
+            while (deliveredOn == null && System.currentTimeMillis() < startedOn + timeoutMillis) {
+                deliveredOn = firstDeliveredOn(recipient, startedOn);
+                if (deliveredOn == null) {
+                    Thread.sleep(100);
+                }
+            }
+            if (deliveredOn != null) {
+                deliveredStats.record((deliveredOn - startedOn) * 1_000_000L);
+            } else {
+                deliveredStats.error();
+            }
+        }
+        sendStats.log(LOG);
+        deliveredStats.log(LOG);
+        assertEquals("Sends that never arrived at " + sink.getEndpoint(), 0, deliveredStats.getErrors());
+    }
+
+    // Each send waits for its message, so the first message to the recipient since the send started is its own
+    private Long firstDeliveredOn(String recipient, long startedOn) {
+        for (LocalMessageSink.DeliveredMessage message : sink.getMessages()) {
+            if (message.getRecipient().equals(recipient) && message.getReceivedOn() >= startedOn) {
+                return message.getReceivedOn();
+            }
+        }
+        return null;
+    }
+
+    // The phone number is the same on every run, so an account left by a run that didn't clean up is removed first
+    private void deleteLeftoverPhoneAccounts() throws Exception {
+        ParticipantsApi participantsApi = admin.getClient(ParticipantsApi.class);
+        ForAdminsApi adminsApi = admin.getClient(ForAdminsApi.class);
+        AccountSummarySearch search = new AccountSummarySearch().phoneFilter(PHONE.getNumber());
+        for (AccountSummary summary : participantsApi.searchAccountSummaries(search).execute().body().getItems()) {
+            try {
+                adminsApi.deleteUser(summary.getId()).execute();
+            } catch(EntityNotFoundException e) {
+            }
+        }
+    }
+}
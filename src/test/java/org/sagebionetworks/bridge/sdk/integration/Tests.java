@@ -77,6 +77,7 @@ public class Tests {
     public static final String ORG_ID_2 = "org2";
     public static final Phone PHONE = new Phone().number("+19712486796").regionCode("US");
     public static final String NATIONAL_PHONE_FORMAT = "(971) 248-6796";
+    public static final int FICTIONAL_PHONE_COUNT = 100;
     public static final String SYNAPSE_USER_ID = "88888";
 
     private static final int RETRY_MAX_TRIES = 5;
@@ -435,6 +436,16 @@ public class Tests {
     public static String escapeJSON(String json) {
         return json.replaceAll("'", "\"");
     }
+
+    /**
+     * A phone number for tests that need more phone accounts than {@link #PHONE}. Numbers come from 555-0100 to
+     * 555-0199, the only block of 555 numbers reserved for fictional use, so messages sent to them can't reach a
+     * subscriber. There are {@link #FICTIONAL_PHONE_COUNT} of them; the index wraps around.
+     */
+    public static Phone fictionalPhone(int index) {
+        return new Phone().regionCode("US")
+                .number(String.format("+1206555%04d", 100 + Math.floorMod(index, FICTIONAL_PHONE_COUNT)));
+    }
     
     public static TestUser withClientInfo(TestUser user, ClientInfo clientInfo) {
         ClientManager.Builder builder = new ClientManager.Builder();
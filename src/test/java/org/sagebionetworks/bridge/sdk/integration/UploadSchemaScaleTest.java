@@ -0,0 +1,217 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.junit.Assert.assertEquals;
+import static org.sagebionetworks.bridge.rest.model.Role.DEVELOPER;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.rest.RestUtils;
+import org.sagebionetworks.bridge.rest.api.ForAdminsApi;
+import org.sagebionetworks.bridge.rest.api.HealthDataApi;
+import org.sagebionetworks.bridge.rest.api.UploadSchemasApi;
+import org.sagebionetworks.bridge.rest.model.HealthDataSubmission;
+import org.sagebionetworks.bridge.rest.model.UploadFieldDefinition;
+import org.sagebionetworks.bridge.rest.model.UploadFieldType;
+import org.sagebionetworks.bridge.rest.model.UploadSchema;
+import org.sagebionetworks.bridge.rest.model.UploadSchemaType;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+/**
+ * Registers hundreds of upload schemas in rounds, each with several revisions and a wide field list (the width
+ * cycles through -Dperf.schemas.fieldCounts=10,50,200), and after each round measures latest-revision lookup
+ * (getMostRecentUploadSchema) and getAllRevisionsOfUploadSchema by field count, the cost of listing every
+ * schema with getMostRecentUploadSchemas, and the time to validate a submission against the latest revision.
+ * Validation is measured with submitHealthData, which validates the data against the schema synchronously.
+ * Scale with -Dperf.schemas.count, -Dperf.schemas.revisions, -Dperf.schemas.rounds, -Dperf.schemas.lookups
+ * (per round) and -Dperf.schemas.threads.
+ */
+@Category(PerformanceTest.class)
+public class UploadSchemaScaleTest {
+    private static final Logger LOG = LoggerFactory.getLogger(UploadSchemaScaleTest.class);
+
+    private static final UploadFieldType[] FIELD_TYPES = { UploadFieldType.STRING, UploadFieldType.INT,
+            UploadFieldType.BOOLEAN };
+
+    private final int schemaCount = PerfStats.param("schemas.count", 200);
+    private final int revisionCount = PerfStats.param("schemas.revisions", 5);
+    private final int rounds = PerfStats.param("schemas.rounds", 4);
+    private final int lookups = PerfStats.param("schemas.lookups", 60);
+    private final int threads = PerfStats.param("schemas.threads", 10);
+    private final List<Integer> fieldCounts = new ArrayList<>();
+
+    private TestUser admin;
+    private TestUser developer;
+    private TestUser user;
+    private String runId;
+    // schema ID -> the latest revision created
+    private Map<String, UploadSchema> schemas = Collections.synchronizedMap(new TreeMap<>());
+
+    @Before
+    public void before() throws Exception {
+        for (String count : System.getProperty("perf.schemas.fieldCounts", "10,50,200").split(",")) {
+            fieldCounts.add(Integer.parseInt(count.trim()));
+        }
+        admin = TestUserHelper.getSignedInAdmin();
+        developer = TestUserHelper.createAndSignInUser(UploadSchemaScaleTest.class, false, DEVELOPER);
+        user = TestUserHelper.createAndSignInUser(UploadSchemaScaleTest.class, true);
+        runId = Tests.randomIdentifier(getClass());
+    }
+
+    @After
+    public void after() throws Exception {
+        ForAdminsApi adminsApi = admin.getClient(ForAdminsApi.class);
+        try {
+            for (String schemaId : schemas.keySet()) {
+                adminsApi.deleteAllRevisionsOfUploadSchema(schemaId, true).execute();
+            }
+        } finally {
+            if (developer != null) {
+                developer.signOutAndDeleteUser();
+            }
+            if (user != null) {
+                user.signOutAndDeleteUser();
+            }
+        }
+    }
+
+    @Test
+    public void registryGrows() throws Exception {
+        UploadSchemasApi schemasApi = developer.getClient(UploadSchemasApi.class);
+        PerfStats createStats = new PerfStats("createUploadSchema");
+        PerfStats revisionStats = new PerfStats("createUploadSchema (new revision)");
+
+        for (int round=1; round <= rounds; round++) {
+            int target = schemaCount * round / rounds;
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int i=schemas.size(); i < target; i++) {
+                int index = i;
+                tasks.add(() -> {
+                    UploadSchema newSchema = new UploadSchema();
+                    newSchema.setSchemaId(runId + "-" + index);
+                    newSchema.setName("Schema " + index);
+                    newSchema.setSchemaType(UploadSchemaType.IOS_DATA);
+                    for (int f=0; f < fieldCount(index); f++) {
+                        newSchema.addFieldDefinitionsItem(field("field" + f, f));
+                    }
+                    UploadSchema schema = createStats.time(() -> schemasApi.createUploadSchema(newSchema).execute()
+                            .body());
+                    schemas.put(schema.getSchemaId(), schema);
+                    // Each revision adds an optional field, a compatible change
+                    for (int r=1; r < revisionCount; r++) {
+                        // A copy, so the recorded revision is only replaced once the next one is created
+                        UploadSchema next = RestUtils.GSON.fromJson(RestUtils.GSON.toJson(schema), UploadSchema.class);
+                        next.addFieldDefinitionsItem(field("added" + r, r).required(false));
+                        next.setRevision(schema.getRevision() + 1);
+                        next.setVersion(null);
+                        schema = revisionStats.time(() -> schemasApi.createUploadSchema(next).execute().body());
+                        schemas.put(schema.getSchemaId(), schema);
+                    }
+                    return null;
+                });
+            }
+            PerfStats.runConcurrently(threads, tasks);
+            measure(schemasApi);
+        }
+        createStats.log(LOG);
+        revisionStats.log(LOG);
+        assertEquals(0, createStats.getErrors() + revisionStats.getErrors());
+    }
+
+    private void measure(UploadSchemasApi schemasApi) throws Exception {
+        String suffix = " (" + schemas.size() + " schemas)";
+        Map<Integer, PerfStats> latestStatsByFields = new TreeMap<>();
+        Map<Integer, PerfStats> revisionsStatsByFields = new TreeMap<>();
+        Map<Integer, PerfStats> validateStatsByFields = new TreeMap<>();
+        for (Integer fields : fieldCounts) {
+            latestStatsByFields.put(fields, new PerfStats("getMostRecentUploadSchema, " + fields + " fields"
+                    + suffix));
+            revisionsStatsByFields.put(fields, new PerfStats("getAllRevisionsOfUploadSchema, " + fields + " fields"
+                    + suffix));
+            validateStatsByFields.put(fields, new PerfStats("submitHealthData validation, " + fields + " fields"
+                    + suffix));
+        }
+        PerfStats listStats = new PerfStats("getMostRecentUploadSchemas" + suffix);
+
+        HealthDataApi healthDataApi = user.getClient(HealthDataApi.class);
+        List<UploadSchema> snapshot = new ArrayList<>(schemas.values());
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i=0; i < lookups; i++) {
+            UploadSchema schema = snapshot.get((i * 7919) % snapshot.size());
+            int fields = fieldCount(Integer.parseInt(schema.getSchemaId().substring(runId.length() + 1)));
+            tasks.add(() -> {
+                UploadSchema latest = latestStatsByFields.get(fields).time(() -> schemasApi
+                        .getMostRecentUploadSchema(schema.getSchemaId()).execute().body());
+                if (!schema.getRevision().equals(latest.getRevision())) {
+                    // The latest revision may lag behind one that was just created
+                    latest = Tests.retryHelper(() -> schemasApi.getMostRecentUploadSchema(schema.getSchemaId())
+                            .execute().body(), found -> schema.getRevision().equals(found.getRevision()));
+                }
+                assertEquals(schema.getRevision(), latest.getRevision());
+                revisionsStatsByFields.get(fields).time(() -> schemasApi
+                        .getAllRevisionsOfUploadSchema(schema.getSchemaId(), false).execute());
+                HealthDataSubmission submission = new HealthDataSubmission().appVersion("version 1.0.0, build 2")
+                        .createdOn(DateTime.now()).data(data(latest)).phoneInfo("Integration Tests")
+                        .schemaId(latest.getSchemaId()).schemaRevision(latest.getRevision());
+                validateStatsByFields.get(fields).time(() -> healthDataApi.submitHealthData(submission).execute());
+                return null;
+            });
+        }
+        PerfStats.runConcurrently(threads, tasks);
+
+        int listed = 0;
+        for (int i=0; i < 5; i++) {
+            listed = listStats.time(() -> schemasApi.getMostRecentUploadSchemas(false).execute().body()
+                    .getItems().size());
+        }
+        LOG.info("{} schemas x {} revisions registered, {} schemas in the app's list", schemas.size(),
+                revisionCount, listed);
+        listStats.log(LOG);
+        for (Integer fields : fieldCounts) {
+            latestStatsByFields.get(fields).log(LOG);
+            revisionsStatsByFields.get(fields).log(LOG);
+            validateStatsByFields.get(fields).log(LOG);
+        }
+    }
+
+    private int fieldCount(int index) {
+        return fieldCounts.get(index % fieldCounts.size());
+    }
+
+    private static UploadFieldDefinition field(String name, int index) {
+        UploadFieldDefinition field = new UploadFieldDefinition();
+        field.setName(name);
+        field.setRequired(true);
+        field.setType(FIELD_TYPES[index % FIELD_TYPES.length]);
+        return field;
+    }
+
+    // A valid value for every field of the schema
+    private static Map<String, Object> data(UploadSchema schema) {
+        Map<String, Object> data = new HashMap<>();
+        for (UploadFieldDefinition field : schema.getFieldDefinitions()) {
+            if (field.getType() == UploadFieldType.INT) {
+                data.put(field.getName(), 7);
+            } else if (field.getType() == UploadFieldType.BOOLEAN) {
+                data.put(field.getName(), true);
+            } else {
+                data.put(field.getName(), "value");
+            }
+        }
+        return data;
+    }
+}
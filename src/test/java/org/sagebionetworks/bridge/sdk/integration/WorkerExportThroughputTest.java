@@ -0,0 +1,192 @@
+package org.sagebionetworks.bridge.sdk.integration;
+
+import static org.junit.Assert.assertTrue;
+import static org.sagebionetworks.bridge.rest.model.Role.WORKER;
+import static org.sagebionetworks.bridge.util.IntegTestUtils.TEST_APP_ID;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.sagebionetworks.bridge.rest.api.ForWorkersApi;
+import org.sagebionetworks.bridge.rest.exceptions.BridgeSDKException;
+import org.sagebionetworks.bridge.rest.model.AccountSummary;
+import org.sagebionetworks.bridge.rest.model.AccountSummaryList;
+import org.sagebionetworks.bridge.rest.model.ForwardCursorScheduledActivityList;
+import org.sagebionetworks.bridge.user.TestUser;
+import org.sagebionetworks.bridge.user.TestUserHelper;
+
+/**
+ * Walks every participant in the app the way a nightly worker does: pages through getParticipantsForApp, then
+ * fetches each participant with getParticipantByIdForApp and pages through their history of one task with
+ * getParticipantTaskHistoryForApp. The walk is run once sequentially and then with the pages partitioned by
+ * offset across a sweep of thread counts, reporting participants per second, per-page, per-participant and
+ * task history latency, and how often the server throttled the worker (429s, which are retried after a
+ * back-off). A cohort of participants is created first so the walk is never trivially small. The cohort has no
+ * schedule, so its task histories are empty and the task history calls measure the cost of the lookup itself.
+ *
+ * Thread counts are given with -Dperf.export.parallelism=2,4,8. Scale with -Dperf.export.users,
+ * -Dperf.export.pageSize, -Dperf.export.details (the cap on participants fetched individually per walk),
+ * -Dperf.export.historyDays, -Dperf.export.backoffMs and -Dperf.export.threads (used to create the cohort). The
+ * task is given with -Dperf.export.taskId.
+ */
+@Category(PerformanceTest.class)
+public class WorkerExportThroughputTest {
+    private static final Logger LOG = LoggerFactory.getLogger(WorkerExportThroughputTest.class);
+
+    private static final int MAX_RETRIES = 5;
+
+    private final int userCount = PerfStats.param("export.users", 50);
+    private final int pageSize = PerfStats.param("export.pageSize", 50);
+    private final int details = PerfStats.param("export.details", 200);
+    private final int backoffMillis = PerfStats.param("export.backoffMs", 1000);
+    private final int historyDays = PerfStats.param("export.historyDays", 14);
+    private final int setupThreads = PerfStats.param("export.threads", 10);
+    private final String taskId = System.getProperty("perf.export.taskId", "task:CCC");
+    private final List<Integer> parallelism = new ArrayList<>();
+
+    private TestUser worker;
+    private List<TestUser> users = new ArrayList<>();
+
+    @Before
+    public void before() throws Exception {
+        for (String level : System.getProperty("perf.export.parallelism", "2,4,8").split(",")) {
+            parallelism.add(Integer.parseInt(level.trim()));
+        }
+        worker = TestUserHelper.createAndSignInUser(WorkerExportThroughputTest.class, false, WORKER);
+        List<Callable<TestUser>> tasks = new ArrayList<>();
+        for (int i=0; i < userCount; i++) {
+            tasks.add(() -> TestUserHelper.createAndSignInUser(WorkerExportThroughputTest.class, true));
+        }
+        users = PerfStats.runConcurrently(setupThreads, tasks);
+    }
+
+    @After
+    public void after() throws Exception {
+        for (TestUser user : users) {
+            user.signOutAndDeleteUser();
+        }
+        if (worker != null) {
+            worker.signOutAndDeleteUser();
+        }
+    }
+
+    @Test
+    public void sequentialAndPartitionedWalks() throws Exception {
+        walk(1);
+        for (Integer threads : parallelism) {
+            walk(threads);
+        }
+    }
+
+    private void walk(int threads) throws Exception {
+        ForWorkersApi workersApi = worker.getClient(ForWorkersApi.class);
+        String label = (threads == 1) ? "sequential" : threads + " partitions";
+        PerfStats pageStats = new PerfStats("getParticipantsForApp (page of " + pageSize + ", " + label + ")");
+        PerfStats detailStats = new PerfStats("getParticipantByIdForApp (" + label + ")");
+        PerfStats historyStats = new PerfStats("getParticipantTaskHistoryForApp (page of " + pageSize + ", " + label
+                + ")");
+        AtomicInteger throttles = new AtomicInteger();
+        Set<String> userIds = ConcurrentHashMap.newKeySet();
+
+        long start = System.nanoTime();
+        AccountSummaryList first = fetch(pageStats, throttles, () -> workersApi.getParticipantsForApp(TEST_APP_ID,
+                0, pageSize, null, null, null, null).execute().body());
+        collect(first, userIds);
+        int total = first.getTotal();
+        if (threads == 1) {
+            for (int offset = pageSize; offset < total; offset += pageSize) {
+                collect(page(workersApi, offset, pageStats, throttles), userIds);
+            }
+        } else {
+            // The total from the first page fixes the partitions; each page is an independent offset
+            List<Callable<Void>> pages = new ArrayList<>();
+            for (int offset = pageSize; offset < total; offset += pageSize) {
+                int offsetBy = offset;
+                pages.add(() -> {
+                    collect(page(workersApi, offsetBy, pageStats, throttles), userIds);
+                    return null;
+                });
+            }
+            PerfStats.runConcurrently(threads, pages);
+        }
+        long pagedNanos = System.nanoTime() - start;
+
+        List<String> sample = new ArrayList<>(userIds).subList(0, Math.min(details, userIds.size()));
+        DateTime endsOn = DateTime.now();
+        DateTime startsOn = endsOn.minusDays(historyDays);
+        List<Callable<Void>> fetches = new ArrayList<>();
+        for (String userId : sample) {
+            fetches.add(() -> {
+                fetch(detailStats, throttles, () -> workersApi.getParticipantByIdForApp(TEST_APP_ID, userId, false)
+                        .execute().body());
+                String offsetKey = null;
+                do {
+                    String key = offsetKey;
+                    ForwardCursorScheduledActivityList history = fetch(historyStats, throttles, () -> workersApi
+                            .getParticipantTaskHistoryForApp(TEST_APP_ID, userId, taskId, startsOn, endsOn, key,
+                                    pageSize).execute().body());
+                    offsetKey = history.getNextPageOffsetKey();
+                } while (offsetKey != null);
+                return null;
+            });
+        }
+        start = System.nanoTime();
+        PerfStats.runConcurrently(threads, fetches);
+        long detailNanos = System.nanoTime() - start;
+
+        LOG.info("Walk ({}): {} of {} participants paged in {} ms ({} participants/s), {} fetched in {} ms ({} "
+                + "participants/s), {} throttled requests", label, userIds.size(), total, pagedNanos / 1_000_000,
+                rate(userIds.size(), pagedNanos), sample.size(), detailNanos / 1_000_000,
+                rate(sample.size(), detailNanos), throttles.get());
+        pageStats.log(LOG);
+        detailStats.log(LOG);
+        historyStats.log(LOG);
+
+        for (TestUser user : users) {
+            assertTrue("Walk (" + label + ") missed " + user.getUserId(), userIds.contains(user.getUserId()));
+        }
+    }
+
+    private AccountSummaryList page(ForWorkersApi workersApi, int offsetBy, PerfStats pageStats,
+            AtomicInteger throttles) throws Exception {
+        return fetch(pageStats, throttles, () -> workersApi.getParticipantsForApp(TEST_APP_ID, offsetBy, pageSize,
+                null, null, null, null).execute().body());
+    }
+
+    /** Time the call, backing off and retrying when the server throttles it. */
+    private <T> T fetch(PerfStats stats, AtomicInteger throttles, Callable<T> call) throws Exception {
+        for (int i=0; ; i++) {
+            try {
+                return stats.time(call);
+            } catch(BridgeSDKException e) {
+                if (e.getStatusCode() != 429 || i == MAX_RETRIES) {
+                    throw e;
+                }
+                throttles.incrementAndGet();
+                Thread.sleep(backoffMillis * (i + 1));
+            }
+        }
+    }
+
+    private static void collect(AccountSummaryList list, Set<String> userIds) {
+        for (AccountSummary summary : list.getItems()) {
+            userIds.add(summary.getId());
+        }
+    }
+
+    private static long rate(int items, long nanos) {
+        return (nanos == 0) ? 0 : (items * 1_000_000_000L) / nanos;
+    }
+}